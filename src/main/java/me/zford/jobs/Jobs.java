@@ -20,21 +20,29 @@ package me.zford.jobs;
 
 import java.io.File;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.logging.Logger;
 
 import me.zford.jobs.config.ConfigManager;
 import me.zford.jobs.container.ActionInfo;
+import me.zford.jobs.container.ActionType;
 import me.zford.jobs.container.Job;
+import me.zford.jobs.container.JobInfo;
 import me.zford.jobs.container.JobProgression;
 import me.zford.jobs.container.JobsPlayer;
 import me.zford.jobs.dao.JobsDAO;
+import me.zford.jobs.dao.JobsWriteQueue;
 import me.zford.jobs.economy.BufferedEconomy;
+import me.zford.jobs.economy.DebtLedger;
 import me.zford.jobs.economy.Economy;
 import me.zford.jobs.i18n.Language;
 import me.zford.jobs.tasks.BufferedPaymentThread;
 import me.zford.jobs.tasks.DatabaseSaveThread;
+import me.zford.jobs.tasks.DatabaseWriteThread;
+import me.zford.jobs.tasks.PaymentDispatcher;
 import me.zford.jobs.util.JobsClassLoader;
 
 public class Jobs {
@@ -45,6 +53,7 @@ public class Jobs {
     private static File dataFolder;
     private static JobsClassLoader classLoader = new JobsClassLoader(instance);
     private static JobsDAO dao = null;
+    private static JobsWriteQueue writeQueue = new JobsWriteQueue();
     private static List<Job> jobs = null;
     private static Job noneJob = null;
     private static WeakHashMap<Job, Integer> usedSlots = new WeakHashMap<Job, Integer>();
@@ -52,9 +61,13 @@ public class Jobs {
     private static TaskScheduler scheduler;
     private static BufferedEconomy economy;
     private static PermissionHandler permissionHandler;
+    private static ListenerHandler listenerHandler;
 
     private static BufferedPaymentThread paymentThread = null;
     private static DatabaseSaveThread saveTask = null;
+    private static DatabaseWriteThread writeTask = null;
+    private static PaymentDispatcher paymentDispatcher = new PaymentDispatcher();
+    private static DebtLedger debtLedger = new DebtLedger();
     
     private Jobs() {}
     
@@ -99,10 +112,15 @@ public class Jobs {
     
     /**
      * Sets the Data Access Object
+     * 
+     * Connections held by the previous DAO are closed.
      * @param dao - the DAO
      */
     public static void setDAO(JobsDAO value) {
+        JobsDAO old = dao;
         dao = value;
+        if (old != null && old != value)
+            old.closeConnections();
     }
     
     /**
@@ -113,6 +131,14 @@ public class Jobs {
         return dao;
     }
     
+    /**
+     * Get the queue of pending player-job writes
+     * @return the write queue
+     */
+    public static JobsWriteQueue getWriteQueue() {
+        return writeQueue;
+    }
+    
     /**
      * Sets the list of jobs
      * @param jobs - list of jobs
@@ -164,6 +190,9 @@ public class Jobs {
     public static void startup() {
         reload();
         
+        // pay out buffered payments every tick
+        getScheduler().scheduleTask(paymentDispatcher, 1, 1);
+        
         // add all online players
         for (Player online: getServer().getOnlinePlayers()){
             Jobs.getPlayerManager().playerJoin(online.getName());
@@ -174,6 +203,19 @@ public class Jobs {
      * Reloads all data
      */
     public static void reload() {
+        if (paymentThread != null) {
+            paymentThread.shutdown();
+            paymentThread = null;
+        }
+        // buffered totals are paid out at the money scale they were added with,
+        // before the debts they paid off are saved
+        if (economy != null)
+            economy.payAll();
+        // pending writes must reach the current database before it is replaced
+        if (dao != null) {
+            writeQueue.flush(dao);
+            debtLedger.save(dao);
+        }
         ConfigManager.getJobsConfiguration().reload();
         Language.reload(ConfigManager.getJobsConfiguration().getLocale());
         ConfigManager.getJobConfig().reload();
@@ -181,19 +223,27 @@ public class Jobs {
         for (Job job: jobs) {
             usedSlots.put(job, getJobsDAO().getSlotsTaken(job));
         }
+        // debts are read once, the database may have changed so write them back
+        if (!debtLedger.isLoaded())
+            debtLedger.load(getJobsDAO());
+        else
+            debtLedger.markDirty();
         pManager.reload();
         permissionHandler.registerPermissions();
-        
-        if (paymentThread != null) {
-            paymentThread.shutdown();
-            paymentThread = null;
-        }
+        if (listenerHandler != null)
+            listenerHandler.registerActionListeners(getRewardedActionTypes());
         
         if (saveTask != null) {
             saveTask.shutdown();
             saveTask = null;
         }
         
+        // write queued player-job changes in the background
+        if (writeTask == null) {
+            writeTask = new DatabaseWriteThread(writeQueue);
+            writeTask.start();
+        }
+        
         // set the system to auto save
         if (ConfigManager.getJobsConfiguration().getSavePeriod() > 0) {
             saveTask = new DatabaseSaveThread(ConfigManager.getJobsConfiguration().getSavePeriod());
@@ -205,18 +255,58 @@ public class Jobs {
         paymentThread.start();
     }
     
+    /**
+     * Gets the action types rewarded by any job, including the none job
+     * @return the rewarded action types
+     */
+    public static Set<ActionType> getRewardedActionTypes() {
+        int mask = 0;
+        for (Job job : jobs) {
+            mask |= job.getActionMask();
+        }
+        if (noneJob != null)
+            mask |= noneJob.getActionMask();
+        EnumSet<ActionType> types = EnumSet.noneOf(ActionType.class);
+        for (ActionType type : ActionType.values()) {
+            if ((mask & (1 << type.ordinal())) != 0)
+                types.add(type);
+        }
+        return types;
+    }
+    
     /**
      * Executes clean shutdown
      */
     public static void shutdown() {
+        if (listenerHandler != null)
+            listenerHandler.unregisterActionListeners();
+        
         if (saveTask != null)
             saveTask.shutdown();
         
-        if (paymentThread != null)
+        if (paymentThread != null) {
             paymentThread.shutdown();
+            paymentThread = null;
+        }
+        
+        // buffered income and payouts already queued are made before the economy goes away
+        if (economy != null)
+            economy.payAll();
+        paymentDispatcher.runAll();
+        
+        if (writeTask != null) {
+            writeTask.shutdown();
+            writeTask = null;
+        }
         
         pManager.saveAll();
         
+        // drain anything queued while saving
+        if (dao != null) {
+            writeQueue.flush(dao);
+            debtLedger.save(dao);
+        }
+        
         if (dao != null) {
             dao.closeConnections();
         }
@@ -303,6 +393,22 @@ public class Jobs {
         return permissionHandler;
     }
     
+    /**
+     * Sets the listener handler
+     * @param h - the listener handler
+     */
+    public static void setListenerHandler(ListenerHandler h) {
+        listenerHandler = h;
+    }
+    
+    /**
+     * Gets the listener handler
+     * @return the listener handler
+     */
+    public static ListenerHandler getListenerHandler() {
+        return listenerHandler;
+    }
+    
     /**
      * Sets the economy handler
      * @param eco - the economy handler
@@ -311,6 +417,22 @@ public class Jobs {
         economy = new BufferedEconomy(eco);
     }
     
+    /**
+     * Gets the payout dispatcher
+     * @return the payout dispatcher
+     */
+    public static PaymentDispatcher getPaymentDispatcher() {
+        return paymentDispatcher;
+    }
+    
+    /**
+     * Gets the ledger of failed withdrawals
+     * @return the debt ledger
+     */
+    public static DebtLedger getDebtLedger() {
+        return debtLedger;
+    }
+    
     /**
      * Gets the economy handler
      * @return the economy handler
@@ -330,24 +452,30 @@ public class Jobs {
     public static void action(JobsPlayer jPlayer, ActionInfo info, double multiplier) {
         List<JobProgression> progression = jPlayer.getJobProgression();
         int numjobs = progression.size();
+        // income at index 0, experience at index 1
+        double[] rewards = new double[2];
         // no job
         if (numjobs == 0) {
             Job jobNone = Jobs.getNoneJob();
             if (jobNone != null) {
-                Double income = jobNone.getIncome(info, 1, numjobs);
-                if (income != null)
-                    Jobs.getEconomy().pay(jPlayer, income*multiplier);
+                JobInfo jobInfo = jobNone.getJobInfo(info);
+                if (jobInfo != null) {
+                    jobInfo.getRewards(1, numjobs, rewards);
+                    Jobs.getEconomy().pay(jPlayer, rewards[0]*multiplier);
+                }
             }
         } else {
             for (JobProgression prog : progression) {
                 int level = prog.getLevel();
-                Double income = prog.getJob().getIncome(info, level, numjobs);
-                if (income != null) {
-                    Double exp = prog.getJob().getExperience(info, level, numjobs);
+                JobInfo jobInfo = prog.getJob().getJobInfo(info);
+                if (jobInfo != null) {
+                    jobInfo.getRewards(level, numjobs, rewards);
+                    double income = rewards[0];
+                    double exp = rewards[1];
                     if (ConfigManager.getJobsConfiguration().addXpPlayer()) {
                         Player player = getServer().getPlayer(jPlayer.getName());
                         if (player != null)
-                            player.giveExp(exp.intValue());
+                            player.giveExp((int) exp);
                     }
                     // give income
                     Jobs.getEconomy().pay(jPlayer, income*multiplier);
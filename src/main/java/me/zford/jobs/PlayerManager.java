@@ -20,38 +20,210 @@ package me.zford.jobs;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import me.zford.jobs.config.ConfigManager;
 import me.zford.jobs.container.Job;
 import me.zford.jobs.container.JobProgression;
 import me.zford.jobs.container.JobsPlayer;
+import me.zford.jobs.container.JobsPlayerSnapshot;
 import me.zford.jobs.container.Title;
 import me.zford.jobs.dao.JobsDAO;
+import me.zford.jobs.dao.JobsDAOData;
+import me.zford.jobs.dao.JobsWriteQueue;
 import me.zford.jobs.i18n.Language;
 import me.zford.jobs.util.ChatColor;
 
 public class PlayerManager {
-    private Map<String, JobsPlayer> players = Collections.synchronizedMap(new HashMap<String, JobsPlayer>());
+    // number of players written per database transaction during saveAll
+    private static final int SAVE_BATCH_SIZE = 100;
+    // longest time a join waits for its prefetch before loading the player itself
+    private static final long PREFETCH_WAIT = 3000;
+    // prefetched data that was never claimed by a join is dropped after this long
+    private static final long PREFETCH_EXPIRY = 60000;
+    
+    private ConcurrentHashMap<String, PlayerEntry> players = new ConcurrentHashMap<String, PlayerEntry>();
+    // players with changes that are not saved yet
+    private Set<JobsPlayer> dirty = Collections.newSetFromMap(new ConcurrentHashMap<JobsPlayer, Boolean>());
+    // names of offline players that may be evicted once saved
+    private Set<String> offline = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private ConcurrentHashMap<String, Prefetch> prefetched = new ConcurrentHashMap<String, Prefetch>();
+    // bumped on every queued or committed write of a player, prefetches from an older generation are stale
+    private ConcurrentHashMap<String, AtomicInteger> writeGenerations = new ConcurrentHashMap<String, AtomicInteger>();
+    
+    /**
+     * Loads the data of a player that is about to join
+     * 
+     * Called off the main thread before login, so the join itself does not wait on the database.
+     * @param playername
+     */
+    public void prefetch(final String playername) {
+        pruneExpiredPrefetches();
+        if (players.containsKey(playername))
+            return;
+        Prefetch prefetch = new Prefetch(getWriteGeneration(playername), new Callable<List<JobsDAOData>>() {
+            @Override
+            public List<JobsDAOData> call() {
+                flushPending(playername);
+                return Jobs.getJobsDAO().getAllJobs(new JobsPlayer(playername));
+            }
+        });
+        // a prefetch of an earlier login that never completed may be stale
+        prefetched.put(playername, prefetch);
+        prefetch.task.run();
+    }
+    
+    /**
+     * Records that rows of a player were queued or written
+     * 
+     * Data prefetched before the write is not used.
+     * @param playername - the player
+     */
+    public void bumpWriteGeneration(String playername) {
+        AtomicInteger generation = writeGenerations.get(playername);
+        if (generation == null) {
+            generation = writeGenerations.putIfAbsent(playername, new AtomicInteger(1));
+            if (generation == null)
+                return;
+        }
+        generation.incrementAndGet();
+    }
+    
+    private int getWriteGeneration(String playername) {
+        AtomicInteger generation = writeGenerations.get(playername);
+        return generation == null ? 0 : generation.get();
+    }
+    
+    /**
+     * Drops prefetched data of logins that never completed
+     */
+    private void pruneExpiredPrefetches() {
+        long now = System.currentTimeMillis();
+        Iterator<Prefetch> iter = prefetched.values().iterator();
+        while (iter.hasNext()) {
+            if (now - iter.next().created > PREFETCH_EXPIRY)
+                iter.remove();
+        }
+    }
+    
+    /**
+     * Loads a player, using prefetched data when available
+     * @param playername
+     * @return the loaded player
+     */
+    private JobsPlayer loadPlayer(String playername) {
+        JobsPlayer jPlayer = new JobsPlayer(playername);
+        Prefetch prefetch = prefetched.remove(playername);
+        // data changed since the prefetch started, it may be stale
+        if (prefetch != null && prefetch.generation != getWriteGeneration(playername))
+            prefetch = null;
+        if (prefetch != null) {
+            try {
+                jPlayer.loadDAOData(prefetch.task.get(PREFETCH_WAIT, TimeUnit.MILLISECONDS));
+                return jPlayer;
+            } catch (TimeoutException e) {
+                Jobs.getPluginLogger().warning("Timed out waiting for prefetched data of "+playername+", loading it now");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        flushPending(playername);
+        jPlayer.loadDAOData(Jobs.getJobsDAO().getAllJobs(jPlayer));
+        return jPlayer;
+    }
+    
+    /**
+     * Gets the registry entry of a player, loading the player if needed
+     * 
+     * Only the thread that creates the entry loads the player, others wait for it.
+     * @param playername
+     * @param initial - the state of a newly loaded player
+     * @return the loaded entry, never evicted when returned
+     */
+    private PlayerEntry getEntry(String playername, PlayerState initial) {
+        while (true) {
+            PlayerEntry entry = players.get(playername);
+            if (entry == null) {
+                PlayerEntry created = new PlayerEntry();
+                entry = players.putIfAbsent(playername, created);
+                if (entry == null) {
+                    try {
+                        created.player = loadPlayer(playername);
+                        created.state.set(initial);
+                        if (initial != PlayerState.ONLINE)
+                            offline.add(playername);
+                    } finally {
+                        if (created.player == null) {
+                            created.state.set(PlayerState.EVICTED);
+                            players.remove(playername, created);
+                        }
+                        created.loaded.countDown();
+                    }
+                    return created;
+                }
+            }
+            entry.awaitLoad();
+            if (entry.state.get() != PlayerState.EVICTED)
+                return entry;
+            players.remove(playername, entry);
+        }
+    }
+    
+    /**
+     * Evicts an offline player from the registry if all of their data is saved
+     * @param playername
+     * @param entry - the registry entry of the player
+     * @return true if the player was evicted
+     */
+    private boolean tryEvict(String playername, PlayerEntry entry) {
+        JobsPlayer jPlayer = entry.player;
+        if (jPlayer == null)
+            return false;
+        synchronized (jPlayer.saveLock) {
+            if (!jPlayer.isSaved())
+                return false;
+            PlayerState state = entry.state.get();
+            if (state != PlayerState.OFFLINE_DIRTY && state != PlayerState.EVICTABLE)
+                return false;
+            if (!entry.state.compareAndSet(state, PlayerState.EVICTED))
+                return false;
+        }
+        players.remove(playername, entry);
+        // only a pending prefetch still needs the generation to be checked
+        if (!prefetched.containsKey(playername))
+            writeGenerations.remove(playername);
+        return true;
+    }
     
     /**
      * Handles join of new player
      * @param playername
      */
     public void playerJoin(String playername) {
-        synchronized (players) {
-            JobsPlayer jPlayer = players.get(playername);
-            if (jPlayer == null) {
-                jPlayer = new JobsPlayer(playername);
-                jPlayer.loadDAOData(Jobs.getJobsDAO().getAllJobs(jPlayer));
-                players.put(playername, jPlayer);
-            }
-            jPlayer.onConnect();
-            jPlayer.reloadHonorific();
-            Jobs.getPermissionHandler().recalculatePermissions(jPlayer);
+        PlayerEntry entry;
+        while (true) {
+            entry = getEntry(playername, PlayerState.ONLINE);
+            PlayerState state = entry.state.get();
+            if (state != PlayerState.EVICTED && entry.state.compareAndSet(state, PlayerState.ONLINE))
+                break;
         }
+        JobsPlayer jPlayer = entry.player;
+        jPlayer.onConnect();
+        jPlayer.reloadHonorific();
+        Jobs.getPermissionHandler().recalculatePermissions(jPlayer);
     }
     
     /**
@@ -59,69 +231,141 @@ public class PlayerManager {
      * @param playername
      */
     public void playerQuit(String playername) {
-        synchronized (players) {
-            if (ConfigManager.getJobsConfiguration().saveOnDisconnect()) {
-                JobsPlayer jPlayer = players.remove(playername);
-                if (jPlayer != null) {
-                    jPlayer.save(Jobs.getJobsDAO());
-                    jPlayer.onDisconnect();
-                }
-            } else {
-                JobsPlayer jPlayer = players.get(playername);
-                if (jPlayer != null) {
-                    jPlayer.onDisconnect();
-                }
-            }
+        PlayerEntry entry = players.get(playername);
+        if (entry == null)
+            return;
+        entry.awaitLoad();
+        JobsPlayer jPlayer = entry.player;
+        if (jPlayer == null)
+            return;
+        
+        jPlayer.onDisconnect();
+        if (!entry.state.compareAndSet(PlayerState.ONLINE, PlayerState.OFFLINE_DIRTY))
+            return;
+        offline.add(playername);
+        
+        if (ConfigManager.getJobsConfiguration().saveOnDisconnect()) {
+            jPlayer.save(Jobs.getJobsDAO());
+            tryEvict(playername, entry);
         }
     }
     
     /**
      * Save all the information of all of the players in the game
      */
-    public void saveAll() {
+    public synchronized void saveAll() {
         JobsDAO dao = Jobs.getJobsDAO();
         
         /*
          * Saving is a three step process to minimize synchronization locks when called asynchronously.
+         * Queued join, quit and progression writes are flushed first.
          * 
-         * 1) Safely copy list for saving.
-         * 2) Perform save on all players on copied list.
-         * 3) Garbage collect the real list to remove any offline players with saved data
+         * 1) Walk the dirty set, which never blocks joins or lookups.
+         * 2) Save all unsaved players, in batches of SAVE_BATCH_SIZE.
+         * 3) Evict any offline players with saved data
          */
-        ArrayList<JobsPlayer> list = null;
-        synchronized (players) {
-            list = new ArrayList<JobsPlayer>(players.values());
-        }
+        Jobs.getWriteQueue().flush(dao);
         
-        for (JobsPlayer jPlayer : list) {
-            jPlayer.save(dao);
+        ArrayList<JobsPlayer> batch = new ArrayList<JobsPlayer>(SAVE_BATCH_SIZE);
+        Iterator<JobsPlayer> iter = dirty.iterator();
+        while (iter.hasNext()) {
+            JobsPlayer jPlayer = iter.next();
+            // changes made from here on add the player back
+            iter.remove();
+            if (jPlayer.isSaved())
+                continue;
+            batch.add(jPlayer);
+            if (batch.size() >= SAVE_BATCH_SIZE) {
+                saveBatch(dao, batch);
+                batch.clear();
+            }
         }
+        if (!batch.isEmpty())
+            saveBatch(dao, batch);
         
-        synchronized (players) {
-            Iterator<JobsPlayer> iter = players.values().iterator();
-            while (iter.hasNext()) {
-                JobsPlayer jPlayer = iter.next();
-                synchronized (jPlayer.saveLock) {
-                    if (!jPlayer.isOnline() && jPlayer.isSaved()) {
-                        iter.remove();
-                    }
+        Iterator<String> names = offline.iterator();
+        while (names.hasNext()) {
+            String playername = names.next();
+            PlayerEntry entry = players.get(playername);
+            if (entry == null) {
+                names.remove();
+                continue;
+            }
+            PlayerState state = entry.state.get();
+            if (state == PlayerState.ONLINE || state == PlayerState.EVICTED || tryEvict(playername, entry))
+                names.remove();
+        }
+    }
+    
+    /**
+     * Saves a batch of players in a single database transaction
+     * @param dao - the data access object
+     * @param batch - players to save
+     */
+    private void saveBatch(JobsDAO dao, List<JobsPlayer> batch) {
+        /*
+         * Snapshots are written without holding any save lock. A player is only
+         * marked as saved if nothing changed while the batch was in flight.
+         * 
+         * Only one batch is ever in flight, as saveAll is synchronized, and the
+         * write queue does not write rows while the batch is in flight.
+         */
+        ArrayList<JobsPlayerSnapshot> snapshots = new ArrayList<JobsPlayerSnapshot>(batch.size());
+        synchronized (Jobs.getWriteQueue().writeLock) {
+            for (JobsPlayer jPlayer : batch) {
+                snapshots.add(jPlayer.snapshot());
+            }
+            if (dao.save(snapshots)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).markSaved(snapshots.get(i));
+                    bumpWriteGeneration(batch.get(i).getName());
                 }
+            } else {
+                dirty.addAll(batch);
             }
         }
     }
     
+    /**
+     * Records that a player has changes that are not saved yet
+     * @param jPlayer - the changed player
+     */
+    public void markDirty(JobsPlayer jPlayer) {
+        dirty.add(jPlayer);
+    }
+    
+    /**
+     * Writes queued rows before a player is loaded from the database
+     * @param playername - the player being loaded
+     */
+    private void flushPending(String playername) {
+        JobsWriteQueue queue = Jobs.getWriteQueue();
+        if (queue.hasPending(playername))
+            queue.flush(Jobs.getJobsDAO());
+    }
+    
     /**
      * Get the player job info for specific player
      * @param player - the player who's job you're getting
      * @return the player job info of the player
      */
     public JobsPlayer getJobsPlayer(String playername) {
-        JobsPlayer jPlayer = players.get(playername);
-        if (jPlayer == null) {
-            jPlayer = new JobsPlayer(playername);
-            jPlayer.loadDAOData(Jobs.getJobsDAO().getAllJobs(jPlayer));
-        }
-        return jPlayer;
+        // players looked up while offline stay cached until the next save
+        return getEntry(playername, PlayerState.EVICTABLE).player;
+    }
+    
+    /**
+     * Get the player job info for a player that is online
+     * 
+     * Never loads from the database, so it is safe to call for every event.
+     * @param playername - the player
+     * @return the player job info, null if the player is not online
+     */
+    public JobsPlayer getOnlineJobsPlayer(String playername) {
+        PlayerEntry entry = players.get(playername);
+        if (entry == null || entry.state.get() != PlayerState.ONLINE)
+            return null;
+        return entry.player;
     }
     
     /**
@@ -137,7 +381,7 @@ public class PlayerManager {
             if (!jPlayer.joinJob(job))
                 return;
             
-            Jobs.getJobsDAO().joinJob(jPlayer, job);
+            Jobs.getWriteQueue().joinJob(jPlayer, job);
             Jobs.takeSlot(job);
         }
     }
@@ -155,7 +399,7 @@ public class PlayerManager {
             if (!jPlayer.leaveJob(job))
                 return;
             
-            Jobs.getJobsDAO().quitJob(jPlayer, job);
+            Jobs.getWriteQueue().quitJob(jPlayer, job);
             Jobs.leaveSlot(job);
         }
     }
@@ -167,7 +411,7 @@ public class PlayerManager {
     public void leaveAllJobs(JobsPlayer jPlayer) {
         synchronized (jPlayer.saveLock) {
             for (JobProgression job : jPlayer.getJobProgression()) {
-                Jobs.getJobsDAO().quitJob(jPlayer, job.getJob());
+                Jobs.getWriteQueue().quitJob(jPlayer, job.getJob());
                 Jobs.leaveSlot(job.getJob());
             }
             
@@ -186,10 +430,10 @@ public class PlayerManager {
             if (!jPlayer.transferJob(oldjob,  newjob))
                 return;
             
-            JobsDAO dao = Jobs.getJobsDAO();
-            dao.quitJob(jPlayer, oldjob);
-            dao.joinJob(jPlayer, newjob);
-            jPlayer.save(dao);
+            JobsWriteQueue queue = Jobs.getWriteQueue();
+            queue.quitJob(jPlayer, oldjob);
+            queue.joinJob(jPlayer, newjob);
+            queue.save(jPlayer);
         }
     }
     
@@ -202,7 +446,7 @@ public class PlayerManager {
     public void promoteJob(JobsPlayer jPlayer, Job job, int levels) {
         synchronized (jPlayer.saveLock) {
             jPlayer.promoteJob(job, levels);
-            jPlayer.save(Jobs.getJobsDAO());
+            Jobs.getWriteQueue().save(jPlayer);
         }
     }
     
@@ -215,7 +459,7 @@ public class PlayerManager {
     public void demoteJob(JobsPlayer jPlayer, Job job, int levels) {
         synchronized (jPlayer.saveLock) {
             jPlayer.demoteJob(job, levels);
-            jPlayer.save(Jobs.getJobsDAO());
+            Jobs.getWriteQueue().save(jPlayer);
         }
     }
     
@@ -234,7 +478,7 @@ public class PlayerManager {
             if (prog.addExperience(experience))
                 performLevelUp(jPlayer, job, oldLevel);
     
-            jPlayer.save(Jobs.getJobsDAO());
+            Jobs.getWriteQueue().save(jPlayer);
         }
     }
     
@@ -251,7 +495,7 @@ public class PlayerManager {
                 return;
             prog.addExperience(-experience);
             
-            jPlayer.save(Jobs.getJobsDAO());
+            Jobs.getWriteQueue().save(jPlayer);
         }
     }
     
@@ -277,7 +521,7 @@ public class PlayerManager {
         message = message.replace("%jobname%", job.getChatColor() + job.getName() + ChatColor.WHITE);
         Title oldTitle = ConfigManager.getJobsConfiguration().getTitleForLevel(oldLevel);
         if (oldTitle != null) {
-            message = message.replace("%titlename%", oldTitle.getChatColor() + oldTitle.getName() + ChatColor.WHITE);
+            message = message.replace("%titlename%", oldTitle.getColoredName());
         }
         if (player != null) {
             message = message.replace("%playername%", player.getDisplayName());
@@ -306,7 +550,7 @@ public class PlayerManager {
             } else {
                 message = message.replace("%playername%", jPlayer.getName());
             }
-            message = message.replace("%titlename%", newTitle.getChatColor() + newTitle.getName() + ChatColor.WHITE);
+            message = message.replace("%titlename%", newTitle.getColoredName());
             message = message.replace("%jobname%", job.getChatColor() + job.getName() + ChatColor.WHITE);
             for (String line: message.split("\n")) {
                 if (ConfigManager.getJobsConfiguration().isBroadcastingLevelups()) {
@@ -324,8 +568,11 @@ public class PlayerManager {
      * Perform reload
      */
     public void reload() {
-        synchronized (players) {
-            for (JobsPlayer jPlayer : players.values()) {
+        for (PlayerEntry entry : players.values()) {
+            JobsPlayer jPlayer = entry.player;
+            if (jPlayer == null)
+                continue;
+            synchronized (jPlayer.saveLock) {
                 for (JobProgression progression : jPlayer.getJobProgression()) {
                     String jobName = progression.getJob().getName();
                     Job job = Jobs.getJob(jobName);
@@ -333,11 +580,64 @@ public class PlayerManager {
                         progression.setJob(job);
                     }
                 }
-                if (jPlayer.isOnline()) {
-                    jPlayer.reloadHonorific();
-                    Jobs.getPermissionHandler().recalculatePermissions(jPlayer);
+            }
+            jPlayer.reloadActionMask();
+            jPlayer.invalidateEligibility();
+            if (jPlayer.isOnline()) {
+                jPlayer.reloadHonorific();
+                Jobs.getPermissionHandler().recalculatePermissions(jPlayer);
+            }
+        }
+    }
+    
+    /**
+     * Registry state of a player
+     */
+    private enum PlayerState {
+        // data is being read from the database
+        LOADING,
+        // player is connected
+        ONLINE,
+        // player left, data may not be saved yet
+        OFFLINE_DIRTY,
+        // player was looked up while offline
+        EVICTABLE,
+        // removed from the registry, must not be used
+        EVICTED
+    }
+    
+    private static class PlayerEntry {
+        private final AtomicReference<PlayerState> state = new AtomicReference<PlayerState>(PlayerState.LOADING);
+        private final CountDownLatch loaded = new CountDownLatch(1);
+        private volatile JobsPlayer player;
+        
+        /**
+         * Waits until the loading thread has finished with this entry
+         */
+        private void awaitLoad() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    loaded.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
                 }
             }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static class Prefetch {
+        private final FutureTask<List<JobsDAOData>> task;
+        private final long created = System.currentTimeMillis();
+        // write generation of the player when the prefetch started
+        private final int generation;
+        
+        private Prefetch(int generation, Callable<List<JobsDAOData>> loader) {
+            this.generation = generation;
+            this.task = new FutureTask<List<JobsDAOData>>(loader);
         }
     }
 }
@@ -0,0 +1,89 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.bukkit;
+
+import java.util.EnumMap;
+import java.util.Set;
+
+import org.bukkit.event.HandlerList;
+
+import me.zford.jobs.ListenerHandler;
+import me.zford.jobs.bukkit.listeners.BreakPaymentListener;
+import me.zford.jobs.bukkit.listeners.BrewPaymentListener;
+import me.zford.jobs.bukkit.listeners.CraftPaymentListener;
+import me.zford.jobs.bukkit.listeners.EnchantPaymentListener;
+import me.zford.jobs.bukkit.listeners.FishPaymentListener;
+import me.zford.jobs.bukkit.listeners.JobsPaymentListener;
+import me.zford.jobs.bukkit.listeners.KillPaymentListener;
+import me.zford.jobs.bukkit.listeners.PlacePaymentListener;
+import me.zford.jobs.bukkit.listeners.RepairPaymentListener;
+import me.zford.jobs.bukkit.listeners.SmeltPaymentListener;
+import me.zford.jobs.container.ActionType;
+
+public class BukkitListenerHandler implements ListenerHandler {
+    private JobsPlugin plugin;
+    // payment listener for every action type, registered or not
+    private EnumMap<ActionType, JobsPaymentListener> listeners = new EnumMap<ActionType, JobsPaymentListener>(ActionType.class);
+    // payment listeners currently registered with the server
+    private EnumMap<ActionType, JobsPaymentListener> registered = new EnumMap<ActionType, JobsPaymentListener>(ActionType.class);
+    
+    public BukkitListenerHandler(JobsPlugin plugin) {
+        this.plugin = plugin;
+        addListener(new BreakPaymentListener(plugin));
+        addListener(new PlacePaymentListener(plugin));
+        addListener(new FishPaymentListener(plugin));
+        addListener(new CraftPaymentListener(plugin));
+        addListener(new RepairPaymentListener(plugin));
+        addListener(new EnchantPaymentListener(plugin));
+        addListener(new SmeltPaymentListener(plugin));
+        addListener(new BrewPaymentListener(plugin));
+        addListener(new KillPaymentListener(plugin));
+    }
+    
+    private void addListener(JobsPaymentListener listener) {
+        listeners.put(listener.getActionType(), listener);
+    }
+    
+    @Override
+    public synchronized void registerActionListeners(Set<ActionType> types) {
+        for (ActionType type : ActionType.values()) {
+            JobsPaymentListener listener = listeners.get(type);
+            if (listener == null)
+                continue;
+            
+            if (types.contains(type)) {
+                if (!registered.containsKey(type)) {
+                    plugin.getServer().getPluginManager().registerEvents(listener, plugin);
+                    registered.put(type, listener);
+                }
+            } else {
+                if (registered.remove(type) != null)
+                    HandlerList.unregisterAll(listener);
+            }
+        }
+    }
+    
+    @Override
+    public synchronized void unregisterActionListeners() {
+        for (JobsPaymentListener listener : registered.values()) {
+            HandlerList.unregisterAll(listener);
+        }
+        registered.clear();
+    }
+}
@@ -43,6 +43,9 @@ public class BukkitPermissionHandler implements PermissionHandler {
     }
     @Override
     public void recalculatePermissions(JobsPlayer jPlayer) {
+        // cached world permission may be stale
+        jPlayer.invalidateEligibility();
+        
         Player player = plugin.getServer().getPlayer(jPlayer.getName());
         if (player == null)
             return;
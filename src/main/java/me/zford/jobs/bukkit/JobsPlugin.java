@@ -24,7 +24,6 @@ import me.zford.jobs.bukkit.config.BukkitJobConfig;
 import me.zford.jobs.bukkit.config.BukkitJobsConfiguration;
 import me.zford.jobs.bukkit.economy.VaultEconomy;
 import me.zford.jobs.bukkit.listeners.JobsListener;
-import me.zford.jobs.bukkit.listeners.JobsPaymentListener;
 import me.zford.jobs.config.ConfigManager;
 import me.zford.jobs.economy.BlackholeEconomy;
 import net.milkbowl.vault.economy.Economy;
@@ -37,6 +36,7 @@ public class JobsPlugin extends JavaPlugin {
     @Override
     public void onEnable() {
         Jobs.setPermissionHandler(new BukkitPermissionHandler(this));
+        Jobs.setListenerHandler(new BukkitListenerHandler(this));
         Jobs.setServer(new BukkitServer());
         Jobs.setScheduler(new BukkitTaskScheduler(this));
         
@@ -53,7 +53,6 @@ public class JobsPlugin extends JavaPlugin {
         
         // register the listeners
         getServer().getPluginManager().registerEvents(new JobsListener(this), this);
-        getServer().getPluginManager().registerEvents(new JobsPaymentListener(this), this);
         
         // register economy
         Jobs.getScheduler().scheduleTask(new Runnable() {
@@ -21,6 +21,7 @@ package me.zford.jobs.bukkit.actions;
 import me.zford.jobs.container.ActionInfo;
 import me.zford.jobs.container.ActionType;
 import me.zford.jobs.container.BaseActionInfo;
+import me.zford.jobs.container.JobInfo;
 
 import org.bukkit.entity.EntityType;
 
@@ -40,4 +41,14 @@ public class EntityActionInfo extends BaseActionInfo implements ActionInfo {
     public String getNameWithSub() {
         return getName();
     }
+
+    @Override
+    public int getId() {
+        return entity.ordinal();
+    }
+
+    @Override
+    public int getSubId() {
+        return JobInfo.NO_SUBTYPE;
+    }
 }
@@ -43,4 +43,14 @@ public abstract class MaterialActionInfo extends BaseActionInfo implements Actio
         return getName()+":"+data;
     }
 
+    @Override
+    public int getId() {
+        return material.ordinal();
+    }
+
+    @Override
+    public int getSubId() {
+        return data;
+    }
+
 }
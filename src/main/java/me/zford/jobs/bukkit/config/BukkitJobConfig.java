@@ -24,6 +24,7 @@ import java.util.ArrayList;
 
 import me.zford.jobs.Jobs;
 import me.zford.jobs.bukkit.JobsPlugin;
+import me.zford.jobs.config.ConfigManager;
 import me.zford.jobs.config.JobConfig;
 import me.zford.jobs.container.ActionType;
 import me.zford.jobs.container.DisplayMethod;
@@ -139,6 +140,7 @@ public class BukkitJobConfig extends JobConfig {
                 maxExpEquation.setVariable("numjobs", 1);
                 maxExpEquation.setVariable("joblevel", 1);
                 maxExpEquation.getValue();
+                optimizeEquation(jobKey, "leveling-progression-equation", maxExpEquation);
             } catch(Exception e) {
                 Jobs.getPluginLogger().warning("职业 " + jobKey + " leveling-progression-equation 属性无效. 跳过该职业!");
                 continue;
@@ -153,6 +155,7 @@ public class BukkitJobConfig extends JobConfig {
                 incomeEquation.setVariable("joblevel", 1);
                 incomeEquation.setVariable("baseincome", 1);
                 incomeEquation.getValue();
+                optimizeEquation(jobKey, "income-progression-equation", incomeEquation);
             } catch(Exception e) {
                 Jobs.getPluginLogger().warning("职业 " + jobKey + " income-progression-equation 属性无效. 跳过该职业!");
                 continue;
@@ -167,6 +170,7 @@ public class BukkitJobConfig extends JobConfig {
                 expEquation.setVariable("joblevel", 1);
                 expEquation.setVariable("baseexperience", 1);
                 expEquation.getValue();
+                optimizeEquation(jobKey, "experience-progression-equation", expEquation);
             } catch(Exception e) {
                 Jobs.getPluginLogger().warning("职业 " + jobKey + " experience-progression-equation 属性无效. 跳过该职业!");
                 continue;
@@ -201,11 +205,19 @@ public class BukkitJobConfig extends JobConfig {
                         String myKey = key.toUpperCase();
                         String type = null;
                         String subType = "";
+                        int id = -1;
+                        int subId = JobInfo.NO_SUBTYPE;
                         
                         if (myKey.contains("-")) {
                             // uses subType
                             subType = ":" + myKey.split("-")[1];
                             myKey = myKey.split("-")[0];
+                            try {
+                                subId = Integer.parseInt(subType.substring(1));
+                            } catch (NumberFormatException e) {
+                                Jobs.getPluginLogger().warning("职业 " + jobKey + " 的 " + actionType.getName() + " 属性无效: " + key + "! 子类型必须是数字!");
+                                continue;
+                            }
                         }
                         Material material = Material.matchMaterial(myKey);
                         if (material == null) {
@@ -248,6 +260,9 @@ public class BukkitJobConfig extends JobConfig {
                             // END HACK
                             
                             type = material.toString();
+                            // kills are matched against entities, never materials
+                            if (actionType != ActionType.KILL)
+                                id = material.ordinal();
                         } else if (actionType == ActionType.KILL) {
                             // check entities
                             EntityType entity = EntityType.fromName(key);
@@ -257,8 +272,10 @@ public class BukkitJobConfig extends JobConfig {
                                 } catch (IllegalArgumentException e) {}
                             }
                             
-                            if (entity != null && entity.isAlive())
+                            if (entity != null && entity.isAlive()) {
                                 type = entity.toString();
+                                id = entity.ordinal();
+                            }
                         }
                         
                         if (type == null) {
@@ -269,7 +286,7 @@ public class BukkitJobConfig extends JobConfig {
                         double income = section.getDouble("income", 0.0);
                         double experience = section.getDouble("experience", 0.0);
                         
-                        jobInfo.add(new JobInfo(type+subType, income, incomeEquation, experience, expEquation));
+                        jobInfo.add(new JobInfo(type+subType, id, subId, income, incomeEquation, experience, expEquation));
                     }
                 }
                 job.setJobInfo(actionType, jobInfo);
@@ -281,10 +298,34 @@ public class BukkitJobConfig extends JobConfig {
                 jobs.add(job);
             }
         }
+        
+        // players hold at most max-jobs jobs, or every job when unlimited
+        int maxNumJobs = ConfigManager.getJobsConfiguration().getMaxJobs();
+        if (maxNumJobs <= 0 || maxNumJobs > jobs.size())
+            maxNumJobs = jobs.size();
+        for (Job job : jobs) {
+            job.buildTables(maxNumJobs);
+        }
+        if (Jobs.getNoneJob() != null)
+            Jobs.getNoneJob().buildTables(maxNumJobs);
+        
         try {
             conf.save(f);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
+    
+    /**
+     * Simplifies an equation and logs the node count before and after
+     * @param jobKey - the job
+     * @param property - name of the equation property
+     * @param equation - the equation
+     */
+    private void optimizeEquation(String jobKey, String property, Parser equation) {
+        int before = equation.getTree().count();
+        equation.optimize();
+        int after = equation.getTree().count();
+        Jobs.getPluginLogger().fine("职业 " + jobKey + " 的 " + property + " 已优化: " + before + " -> " + after + " 个节点");
+    }
 }
@@ -22,6 +22,8 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 import org.bukkit.configuration.Configuration;
@@ -32,6 +34,7 @@ import me.zford.jobs.Jobs;
 import me.zford.jobs.Location;
 import me.zford.jobs.bukkit.JobsPlugin;
 import me.zford.jobs.config.JobsConfiguration;
+import me.zford.jobs.config.JobsSettings;
 import me.zford.jobs.container.RestrictedArea;
 import me.zford.jobs.container.Title;
 import me.zford.jobs.dao.JobsDAOH2;
@@ -49,20 +52,22 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
     
     @Override    
     public synchronized void reload() {
-        // general settings
-        loadGeneralSettings();
         // title settings
-        loadTitleSettings();
+        List<Title> titles = loadTitleSettings();
         // restricted areas
-        loadRestrictedAreaSettings();
+        List<RestrictedArea> restrictedAreas = loadRestrictedAreaSettings();
+        // general settings, publishes the new settings
+        loadGeneralSettings(titles, restrictedAreas);
     }
 
     /**
      * Method to load the general configuration
      * 
      * loads from Jobs/generalConfig.yml
+     * @param titles - the loaded titles
+     * @param restrictedAreas - the loaded restricted areas
      */
-    private synchronized void loadGeneralSettings(){
+    private synchronized void loadGeneralSettings(List<Title> titles, List<RestrictedArea> restrictedAreas){
         File f = new File(plugin.getDataFolder(), "generalConfig.yml");
         YamlConfiguration config = YamlConfiguration.loadConfiguration(f);
         
@@ -94,6 +99,10 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
         config.addDefault("mysql-url", "jdbc:mysql://localhost:3306/minecraft");
         config.addDefault("mysql-table-prefix", "");
         
+        writer.addComment("database-pool-size", "数据库连接池的最大连接数, 仅用于 MySQL 和 H2.",
+                "SQLite 始终只使用一个连接.");
+        config.addDefault("database-pool-size", 4);
+        
         writer.addComment("save-period",  "每次保存的时间间隔, 必须是一个大于0的数");
         config.addDefault("save-period", 10);
         
@@ -135,7 +144,40 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
                 "太低的值会影响性能.  请根据实际情况来设置.");
         config.addDefault("economy-batch-delay", 5);
         
+        writer.addComment("economy-tick-budget", "每个服务器tick用于付给玩家收益的最长时间, 单位是纳秒.  默认是 2000000 (2 毫秒).",
+                "超出的付款会在下一个tick继续, 每个tick至少付给一名玩家.");
+        config.addDefault("economy-tick-budget", 2000000);
+        
+        writer.addComment("economy-thread-safe", "经济插件可以在主线程以外调用时设为 true, 收益会在付款线程中批量发放, 不占用服务器tick.",
+                "大多数经济插件只能在主线程调用.  不确定时请保持 false.");
+        config.addDefault("economy-thread-safe", false);
+        
+        writer.addComment("debt-retry-interval", "扣款失败时, 欠款会记录下来并优先从之后的收益中扣除.",
+                "重新尝试扣除欠款的间隔时间, 单位是秒.  默认是 300 秒.");
+        config.addDefault("debt-retry-interval", 300);
+        
+        writer.addComment("debt-max-retries", "重新尝试扣除欠款的最大次数.  超出后欠款只从收益中扣除.  设为 0 不重试.");
+        config.addDefault("debt-max-retries", 5);
+        
+        writer.addComment("fixed-point-money", "使用定点数累计收益, 避免浮点数的舍入误差.",
+                "收益以比 money-scale 更多的小数位累计, 发放时才四舍六入五成双舍入到 money-scale 位小数.",
+                "不足一个最小单位的零头留到下次发放, 关闭服务器时不足半个最小单位的零头会被舍弃.");
+        config.addDefault("fixed-point-money", false);
+        
+        writer.addComment("money-scale", "定点数收益的小数位数, 0 到 9.  默认是 2.");
+        config.addDefault("money-scale", 2);
+        
+        writer.addComment("permission-cache-time", "缓存玩家收益权限 (jobs.use 和 jobs.world) 的时间, 单位是秒.",
+                "其他插件修改的权限最多在这段时间后生效.  设为 0 不缓存.  默认是 30 秒.");
+        config.addDefault("permission-cache-time", 30);
+        
         String storageMethod = config.getString("storage-method");
+        int poolSize = config.getInt("database-pool-size");
+        if (poolSize <= 0) {
+            Jobs.getPluginLogger().warning("database-pool-size 属性无效!  重置到 4!");
+            poolSize = 4;
+            config.set("database-pool-size", poolSize);
+        }
         if(storageMethod.equalsIgnoreCase("mysql")) {
             String username = config.getString("mysql-username");
             if(username == null) {
@@ -145,7 +187,7 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
             String url = config.getString("mysql-url");
             String prefix = config.getString("mysql-table-prefix");
             if (plugin.isEnabled())
-                Jobs.setDAO(new JobsDAOMySQL(url, username, password, prefix));
+                Jobs.setDAO(new JobsDAOMySQL(url, username, password, prefix, poolSize));
         } else if(storageMethod.equalsIgnoreCase("h2")) {
             File h2jar = new File(plugin.getDataFolder(), "h2.jar");
             if (!h2jar.exists()) {
@@ -165,7 +207,7 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
                     Jobs.getPluginLogger().severe("无法加载 H2 数据库组件!");
                 }
                 if (plugin.isEnabled())
-                    Jobs.setDAO(new JobsDAOH2());
+                    Jobs.setDAO(new JobsDAOH2(poolSize));
             }
         } else if(storageMethod.equalsIgnoreCase("sqlite")) {
             Jobs.setDAO(new JobsDAOSQLite());
@@ -174,12 +216,38 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
             Jobs.setDAO(new JobsDAOSQLite());
         }
         
+        if (config.getLong("economy-tick-budget") <= 0) {
+            Jobs.getPluginLogger().warning("economy-tick-budget 属性无效!  重置到 2000000!");
+            config.set("economy-tick-budget", 2000000);
+        }
+        
+        if (config.getInt("debt-retry-interval") <= 0) {
+            Jobs.getPluginLogger().warning("debt-retry-interval 属性无效!  重置到 300!");
+            config.set("debt-retry-interval", 300);
+        }
+        
+        if (config.getInt("debt-max-retries") < 0) {
+            Jobs.getPluginLogger().warning("debt-max-retries 属性无效!  重置到 5!");
+            config.set("debt-max-retries", 5);
+        }
+        
+        if (config.getInt("money-scale") < 0 || config.getInt("money-scale") > 9) {
+            Jobs.getPluginLogger().warning("money-scale 属性无效!  重置到 2!");
+            config.set("money-scale", 2);
+        }
+        
+        if (config.getInt("permission-cache-time") < 0) {
+            Jobs.getPluginLogger().warning("permission-cache-time 属性无效!  重置到 30!");
+            config.set("permission-cache-time", 30);
+        }
+        
         if (config.getInt("save-period") <= 0) {
             Jobs.getPluginLogger().severe("保存间隔 0!  重置到 10 分钟!");
             config.set("save-period", 10);
         }
         
         String localeString = config.getString("locale-language");
+        Locale locale;
         try {
             int i = localeString.indexOf('_');
             if (i == -1) {
@@ -192,17 +260,29 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
             Jobs.getPluginLogger().warning("无效的语言 \""+localeString+"\" 重置到 "+locale.getLanguage());
         }
         
-        savePeriod = config.getInt("save-period");
-        isBroadcastingSkillups = config.getBoolean("broadcast-on-skill-up");
-        isBroadcastingLevelups = config.getBoolean("broadcast-on-level-up");
-        payInCreative = config.getBoolean("enable-pay-creative");
-        addXpPlayer = config.getBoolean("add-xp-player");
-        hideJobsWithoutPermission = config.getBoolean("hide-jobs-without-permission");
-        maxJobs = config.getInt("max-jobs");
-        payNearSpawner = config.getBoolean("enable-pay-near-spawner");
-        modifyChat = config.getBoolean("modify-chat");
-        economyBatchDelay = config.getInt("economy-batch-delay");
-        saveOnDisconnect = config.getBoolean("save-on-disconnect");
+        setSettings(new JobsSettings.Builder()
+                .locale(locale)
+                .savePeriod(config.getInt("save-period"))
+                .isBroadcastingSkillups(config.getBoolean("broadcast-on-skill-up"))
+                .isBroadcastingLevelups(config.getBoolean("broadcast-on-level-up"))
+                .payInCreative(config.getBoolean("enable-pay-creative"))
+                .addXpPlayer(config.getBoolean("add-xp-player"))
+                .hideJobsWithoutPermission(config.getBoolean("hide-jobs-without-permission"))
+                .maxJobs(config.getInt("max-jobs"))
+                .payNearSpawner(config.getBoolean("enable-pay-near-spawner"))
+                .modifyChat(config.getBoolean("modify-chat"))
+                .economyBatchDelay(config.getInt("economy-batch-delay"))
+                .economyTickBudget(config.getLong("economy-tick-budget"))
+                .economyThreadSafe(config.getBoolean("economy-thread-safe"))
+                .debtRetryInterval(config.getInt("debt-retry-interval"))
+                .debtMaxRetries(config.getInt("debt-max-retries"))
+                .fixedPointMoney(config.getBoolean("fixed-point-money"))
+                .moneyScale(config.getInt("money-scale"))
+                .permissionCacheTime(config.getInt("permission-cache-time"))
+                .saveOnDisconnect(config.getBoolean("save-on-disconnect"))
+                .titles(titles)
+                .restrictedAreas(restrictedAreas)
+                .build());
         
         // Make sure we're only copying settings we care about
         copySetting(config, writer, "locale-language");
@@ -211,6 +291,7 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
         copySetting(config, writer, "mysql-password");
         copySetting(config, writer, "mysql-url");
         copySetting(config, writer, "mysql-table-prefix");
+        copySetting(config, writer, "database-pool-size");
         copySetting(config, writer, "save-period");
         copySetting(config, writer, "save-on-disconnect");
         copySetting(config, writer, "broadcast-on-skill-up");
@@ -222,6 +303,13 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
         copySetting(config, writer, "add-xp-player");
         copySetting(config, writer, "modify-chat");
         copySetting(config, writer, "economy-batch-delay");
+        copySetting(config, writer, "economy-tick-budget");
+        copySetting(config, writer, "economy-thread-safe");
+        copySetting(config, writer, "debt-retry-interval");
+        copySetting(config, writer, "debt-max-retries");
+        copySetting(config, writer, "fixed-point-money");
+        copySetting(config, writer, "money-scale");
+        copySetting(config, writer, "permission-cache-time");
         
         // Write back config
         try {
@@ -239,9 +327,10 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
      * Method to load the title configuration
      * 
      * loads from Jobs/titleConfig.yml
+     * @return the titles
      */
-    private synchronized void loadTitleSettings(){
-        this.titles.clear();
+    private synchronized List<Title> loadTitleSettings(){
+        ArrayList<Title> titles = new ArrayList<Title>();
         File f = new File(plugin.getDataFolder(), "titleConfig.yml");
         YamlConfiguration conf = YamlConfiguration.loadConfiguration(f);
         StringBuilder header = new StringBuilder()
@@ -314,7 +403,7 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
                 continue;
             }
             
-            this.titles.add(new Title(titleName, titleShortName, titleColor, levelReq));
+            titles.add(new Title(titleName, titleShortName, titleColor, levelReq));
         }
         
         try {
@@ -322,6 +411,7 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return titles;
     }
     
 
@@ -329,9 +419,10 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
      * Method to load the restricted areas configuration
      * 
      * loads from Jobs/restrictedAreas.yml
+     * @return the restricted areas
      */
-    private synchronized void loadRestrictedAreaSettings(){
-        this.restrictedAreas.clear();
+    private synchronized List<RestrictedArea> loadRestrictedAreaSettings(){
+        ArrayList<RestrictedArea> restrictedAreas = new ArrayList<RestrictedArea>();
         File f = new File(plugin.getDataFolder(), "restrictedAreas.yml");
         YamlConfiguration conf = YamlConfiguration.loadConfiguration(f);
         conf.options().indent(2);
@@ -409,7 +500,7 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
                         conf.getDouble("restrictedareas."+areaKey+".point2.x", 0.0),
                         conf.getDouble("restrictedareas."+areaKey+".point2.y", 0.0),
                         conf.getDouble("restrictedareas."+areaKey+".point2.z", 0.0));
-                this.restrictedAreas.add(new RestrictedArea(point1, point2, multiplier));
+                restrictedAreas.add(new RestrictedArea(point1, point2, multiplier));
             }
         }
         try {
@@ -417,6 +508,7 @@ public class BukkitJobsConfiguration extends JobsConfiguration {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return restrictedAreas;
     }
 
 }
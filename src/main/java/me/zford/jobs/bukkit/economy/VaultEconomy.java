@@ -18,9 +18,13 @@
 
 package me.zford.jobs.bukkit.economy;
 
-import me.zford.jobs.economy.Economy;
+import java.util.HashMap;
+import java.util.Map;
 
-public class VaultEconomy implements Economy {
+import me.zford.jobs.config.ConfigManager;
+import me.zford.jobs.economy.BulkEconomy;
+
+public class VaultEconomy implements BulkEconomy {
     private net.milkbowl.vault.economy.Economy vault;
     public VaultEconomy(net.milkbowl.vault.economy.Economy vault) {
         this.vault = vault;
@@ -36,6 +40,22 @@ public class VaultEconomy implements Economy {
         return vault.withdrawPlayer(playerName, money).transactionSuccess();
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        // most Vault providers expect to be called from the main thread
+        return ConfigManager.getJobsConfiguration().isEconomyThreadSafe();
+    }
+
+    @Override
+    public Map<String, Double> depositAll(Map<String, Double> payments) {
+        HashMap<String, Double> failed = new HashMap<String, Double>();
+        for (Map.Entry<String, Double> payment : payments.entrySet()) {
+            if (!depositPlayer(payment.getKey(), payment.getValue()))
+                failed.put(payment.getKey(), payment.getValue());
+        }
+        return failed;
+    }
+
     @Override
     public String format(double money) {
         return vault.format(money);
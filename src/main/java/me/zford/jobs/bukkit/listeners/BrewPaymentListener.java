@@ -0,0 +1,104 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.bukkit.listeners;
+
+import java.util.List;
+
+import me.zford.jobs.Jobs;
+import me.zford.jobs.bukkit.BukkitUtil;
+import me.zford.jobs.bukkit.JobsPlugin;
+import me.zford.jobs.bukkit.actions.ItemActionInfo;
+import me.zford.jobs.config.ConfigManager;
+import me.zford.jobs.container.ActionType;
+import me.zford.jobs.container.JobsPlayer;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.inventory.BrewEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.metadata.FixedMetadataValue;
+import org.bukkit.metadata.MetadataValue;
+
+/**
+ * Pays brewing stand owners for brewing potions
+ * 
+ * Tracks who last used each brewing stand.
+ */
+public class BrewPaymentListener extends JobsPaymentListener {
+    public BrewPaymentListener(JobsPlugin plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    public ActionType getActionType() {
+        return ActionType.BREW;
+    }
+    
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void onBrewEvent(BrewEvent event) {
+        if (!plugin.isEnabled())
+            return;
+        Block block = event.getBlock();
+        if (block == null)
+            return;
+        
+        if (!block.hasMetadata(brewingOwnerMetadata))
+            return;
+        List<MetadataValue> data = block.getMetadata(brewingOwnerMetadata);
+        if (data.isEmpty())
+            return;
+        
+        // only care about first
+        MetadataValue value = data.get(0);
+        String playerName = value.asString();
+        Player player = plugin.getServer().getPlayerExact(playerName);
+        if (player == null)
+            return;
+        
+        JobsPlayer jPlayer = getJobsPlayer(player, false);
+        if (jPlayer == null)
+            return;
+        
+        if (!hasWorldPermission(player, jPlayer))
+            return;
+        
+        double multiplier = ConfigManager.getJobsConfiguration().getRestrictedMultiplier(BukkitUtil.wrapPlayer(player));
+        Jobs.action(jPlayer, new ItemActionInfo(event.getContents().getIngredient(), ActionType.BREW), multiplier);
+    }
+    
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void onPlayerInteract(PlayerInteractEvent event) {
+        if (!plugin.isEnabled())
+            return;
+        
+        Block block = event.getClickedBlock();
+        if (block == null)
+            return;
+        
+        if (block.getType().equals(Material.BREWING_STAND)) {
+            if (block.hasMetadata(brewingOwnerMetadata))
+                block.removeMetadata(brewingOwnerMetadata, plugin);
+            
+            block.setMetadata(brewingOwnerMetadata, new FixedMetadataValue(plugin, event.getPlayer().getName()));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.bukkit.listeners;
+
+import java.util.List;
+
+import me.zford.jobs.Jobs;
+import me.zford.jobs.bukkit.BukkitUtil;
+import me.zford.jobs.bukkit.JobsPlugin;
+import me.zford.jobs.bukkit.actions.ItemActionInfo;
+import me.zford.jobs.config.ConfigManager;
+import me.zford.jobs.container.ActionType;
+import me.zford.jobs.container.JobsPlayer;
+
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.enchantment.EnchantItemEvent;
+import org.bukkit.inventory.EnchantingInventory;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Pays for enchanting items
+ */
+public class EnchantPaymentListener extends JobsPaymentListener {
+    public EnchantPaymentListener(JobsPlugin plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    public ActionType getActionType() {
+        return ActionType.ENCHANT;
+    }
+    
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void onEnchantItem(EnchantItemEvent event) {
+        // make sure plugin is enabled
+        if(!plugin.isEnabled()) return;
+        Inventory inv = event.getInventory();
+        
+        if (!(inv instanceof EnchantingInventory))
+            return;
+        
+        // restricted area multiplier
+        List<HumanEntity> viewers = event.getViewers();
+        if (viewers.size() == 0)
+            return;
+        Player player = null;
+        for (HumanEntity viewer : event.getViewers()) {
+            if (viewer instanceof Player) {
+                player = (Player) viewer;
+                break;
+            }
+        }
+        
+        if (player == null)
+            return;
+        
+        JobsPlayer jPlayer = getJobsPlayer(player, true);
+        if (jPlayer == null)
+            return;
+        
+        ItemStack resultStack = ((EnchantingInventory) inv).getItem();
+        
+        if (resultStack == null)
+            return;
+        
+        // check world permission
+        if (!hasWorldPermission(player, jPlayer))
+            return;
+        
+        double multiplier = ConfigManager.getJobsConfiguration().getRestrictedMultiplier(BukkitUtil.wrapPlayer(player));
+        Jobs.action(jPlayer, new ItemActionInfo(resultStack, ActionType.ENCHANT), multiplier);
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.bukkit.listeners;
+
+import me.zford.jobs.Jobs;
+import me.zford.jobs.bukkit.BukkitUtil;
+import me.zford.jobs.bukkit.JobsPlugin;
+import me.zford.jobs.bukkit.actions.ItemActionInfo;
+import me.zford.jobs.config.ConfigManager;
+import me.zford.jobs.container.ActionType;
+import me.zford.jobs.container.JobsPlayer;
+
+import org.bukkit.entity.Item;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerFishEvent;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Pays for catching fish
+ */
+public class FishPaymentListener extends JobsPaymentListener {
+    public FishPaymentListener(JobsPlugin plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    public ActionType getActionType() {
+        return ActionType.FISH;
+    }
+    
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void onPlayerFish(PlayerFishEvent event) {
+        // make sure plugin is enabled
+        if(!plugin.isEnabled()) return;
+        
+        Player player = event.getPlayer();
+        
+        JobsPlayer jPlayer = getJobsPlayer(player, true);
+        if (jPlayer == null)
+            return;
+        
+        // check world permission
+        if (!hasWorldPermission(player, jPlayer))
+            return;
+        
+        // restricted area multiplier
+        double multiplier = ConfigManager.getJobsConfiguration().getRestrictedMultiplier(BukkitUtil.wrapPlayer(player));
+        
+        if (event.getState().equals(PlayerFishEvent.State.CAUGHT_FISH) && event.getCaught() instanceof Item) {
+            ItemStack items = ((Item) event.getCaught()).getItemStack();
+            Jobs.action(jPlayer, new ItemActionInfo(items, ActionType.FISH), multiplier);
+        }
+    }
+}
@@ -29,6 +29,8 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.world.WorldLoadEvent;
@@ -44,6 +46,14 @@ public class JobsListener implements Listener {
         this.plugin = plugin;
     }
 
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        // make sure plugin is enabled
+        if(!plugin.isEnabled()) return;
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        Jobs.getPlayerManager().prefetch(event.getName());
+    }
+
     @EventHandler(priority=EventPriority.LOWEST)
     public void onPlayerJoin(PlayerJoinEvent event) {
         // make sure plugin is enabled
@@ -58,6 +68,14 @@ public class JobsListener implements Listener {
         Jobs.getPlayerManager().playerQuit(event.getPlayer().getName());
     }
     
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
+        if(!plugin.isEnabled()) return;
+        JobsPlayer jPlayer = Jobs.getPlayerManager().getOnlineJobsPlayer(event.getPlayer().getName());
+        if (jPlayer != null)
+            jPlayer.invalidateEligibility();
+    }
+    
     @EventHandler(priority=EventPriority.NORMAL, ignoreCancelled=true)
     public void onPlayerChat(AsyncPlayerChatEvent event) {
         if (!plugin.isEnabled()) return;
@@ -75,7 +93,7 @@ public class JobsListener implements Listener {
         if (!plugin.isEnabled()) return;
         
         Player player = event.getPlayer();
-        JobsPlayer jPlayer = Jobs.getPlayerManager().getJobsPlayer(player.getName());
+        JobsPlayer jPlayer = Jobs.getPlayerManager().getOnlineJobsPlayer(player.getName());
         String honorific = "";
         if (jPlayer != null)
             honorific = jPlayer.getDisplayHonorific();
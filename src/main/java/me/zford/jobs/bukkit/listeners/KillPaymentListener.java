@@ -0,0 +1,114 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.bukkit.listeners;
+
+import me.zford.jobs.Jobs;
+import me.zford.jobs.bukkit.BukkitUtil;
+import me.zford.jobs.bukkit.JobsPlugin;
+import me.zford.jobs.bukkit.actions.EntityActionInfo;
+import me.zford.jobs.config.ConfigManager;
+import me.zford.jobs.container.ActionType;
+import me.zford.jobs.container.JobsPlayer;
+
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.entity.Tameable;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.entity.CreatureSpawnEvent;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
+import org.bukkit.metadata.FixedMetadataValue;
+
+/**
+ * Pays for killing mobs
+ * 
+ * Marks mobs from spawners, which pay nothing unless enabled.
+ */
+public class KillPaymentListener extends JobsPaymentListener {
+    public KillPaymentListener(JobsPlugin plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    public ActionType getActionType() {
+        return ActionType.KILL;
+    }
+    
+    @EventHandler(priority=EventPriority.MONITOR)
+    public void onEntityDeath(EntityDeathEvent event) {
+        // Entity that died must be living
+        if(!(event.getEntity() instanceof LivingEntity))
+            return;
+        LivingEntity lVictim = (LivingEntity)event.getEntity();
+
+        // mob spawner, no payment or experience
+        if (lVictim.hasMetadata(mobSpawnerMetadata)) {
+            lVictim.removeMetadata(mobSpawnerMetadata, plugin);
+            return;
+        }
+        
+        // make sure plugin is enabled
+        if(!plugin.isEnabled())
+            return;
+        
+        if (event.getEntity().getLastDamageCause() instanceof EntityDamageByEntityEvent){
+            EntityDamageByEntityEvent e = (EntityDamageByEntityEvent)event.getEntity().getLastDamageCause();
+            Player pDamager = null;
+            if(e.getDamager() instanceof Player) {
+                pDamager = (Player)e.getDamager();
+            } else if(e.getDamager() instanceof Projectile && ((Projectile)e.getDamager()).getShooter() instanceof Player) {
+                pDamager = (Player)((Projectile)e.getDamager()).getShooter();
+            } else if(e.getDamager() instanceof Tameable) {
+                Tameable t = (Tameable) e.getDamager();
+                if (t.isTamed() && t.getOwner() instanceof Player) {
+                    pDamager = (Player) t.getOwner();
+                }
+            }
+            if(pDamager != null) {
+                JobsPlayer jDamager = getJobsPlayer(pDamager, true);
+                if (jDamager == null)
+                    return;
+                
+                // check world permission
+                if (!hasWorldPermission(pDamager, jDamager))
+                    return;
+                
+                // restricted area multiplier
+                double multiplier = ConfigManager.getJobsConfiguration().getRestrictedMultiplier(BukkitUtil.wrapPlayer(pDamager));
+                // pay
+                Jobs.action(jDamager, new EntityActionInfo(lVictim.getType(), ActionType.KILL), multiplier);
+            }
+        }
+    }
+    
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void onCreatureSpawn(CreatureSpawnEvent event) {
+        if(!(event.getEntity() instanceof LivingEntity))
+            return;
+        if(!event.getSpawnReason().equals(SpawnReason.SPAWNER))
+            return;
+        if(ConfigManager.getJobsConfiguration().payNearSpawner())
+            return;
+        LivingEntity creature = (LivingEntity)event.getEntity();
+        creature.setMetadata(mobSpawnerMetadata, new FixedMetadataValue(plugin, true));
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.bukkit.listeners;
+
+import me.zford.jobs.Jobs;
+import me.zford.jobs.bukkit.BukkitUtil;
+import me.zford.jobs.bukkit.JobsPlugin;
+import me.zford.jobs.bukkit.actions.ItemActionInfo;
+import me.zford.jobs.config.ConfigManager;
+import me.zford.jobs.container.ActionType;
+import me.zford.jobs.container.JobsPlayer;
+
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryType.SlotType;
+import org.bukkit.inventory.AnvilInventory;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+/**
+ * Pays for repairing items on an anvil
+ */
+public class RepairPaymentListener extends JobsPaymentListener {
+    public RepairPaymentListener(JobsPlugin plugin) {
+        super(plugin);
+    }
+    
+    @Override
+    public ActionType getActionType() {
+        return ActionType.REPAIR;
+    }
+    
+    @EventHandler(priority=EventPriority.MONITOR, ignoreCancelled=true)
+    public void onInventoryRepair(InventoryClickEvent event) {
+        // make sure plugin is enabled
+        if(!plugin.isEnabled()) return;
+        Inventory inv = event.getInventory();
+        
+        // must be anvil inventory
+        if (!(inv instanceof AnvilInventory))
+            return;
+        
+        // Must be "container" slot 9
+        if (!event.getSlotType().equals(SlotType.CONTAINER) || event.getSlot() != 9)
+            return;
+        
+        if (!(event.getWhoClicked() instanceof Player))
+            return;
+        
+        Player player = (Player) event.getWhoClicked();
+        
+        JobsPlayer jPlayer = getJobsPlayer(player, true);
+        if (jPlayer == null)
+            return;
+        
+        ItemStack resultStack = event.getCurrentItem();
+        
+        if (resultStack == null)
+            return;
+        
+        // check world permission
+        if (!hasWorldPermission(player, jPlayer))
+            return;
+        
+        if (event.isShiftClick()) {
+            // check for full inventory
+            PlayerInventory pInv = player.getInventory();
+            boolean isFull = true;
+            for (ItemStack stack : pInv.getContents()) {
+                if (stack == null || stack.getType().equals(Material.AIR)) {
+                    isFull = false;
+                    break;
+                }
+            }
+            if (isFull)
+                return;
+        } else {
+            // check item on cursor
+            ItemStack cursor = player.getItemOnCursor();
+            if (cursor != null && !cursor.getType().equals(Material.AIR)) {
+                // don't craft if it's a different item
+                if (!cursor.getType().equals(resultStack.getType()))
+                    return;
+                // check if stack is full
+                if (cursor.getAmount() >= cursor.getMaxStackSize())
+                    return;
+            }
+        }
+        
+        double multiplier = ConfigManager.getJobsConfiguration().getRestrictedMultiplier(BukkitUtil.wrapPlayer(player));
+        Jobs.action(jPlayer, new ItemActionInfo(resultStack, ActionType.REPAIR), multiplier);
+    }
+}
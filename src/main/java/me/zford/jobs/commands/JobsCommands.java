@@ -291,12 +291,19 @@ public abstract class JobsCommands {
         
         if (jPlayer.getJobProgression().size() == 0){
             sender.sendMessage(Language.getMessage("command.stats.error.nojob"));
-            return true;
         }
         
         for (JobProgression jobProg: jPlayer.getJobProgression()){
             sender.sendMessage(jobStatsMessage(jobProg).split("\n"));
         }
+        
+        // failed withdrawals still owed
+        double debt = Jobs.getDebtLedger().getDebt(jPlayer.getName());
+        if (debt > 0 && Jobs.getEconomy() != null) {
+            String message = Language.getMessage("command.stats.output.debt");
+            message = message.replace("%money%", Jobs.getEconomy().format(debt));
+            sender.sendMessage(message);
+        }
         return true;
     }
 
@@ -760,13 +767,15 @@ public abstract class JobsCommands {
             level = prog.getLevel();
         int numjobs = player.getJobProgression().size();
         List<JobInfo> jobInfo = job.getJobInfo(type);
+        double[] rewards = new double[2];
         for (JobInfo info: jobInfo) {
             String materialName = info.getName().toLowerCase().replace('_', ' ');
             
-            double income = info.getIncome(level, numjobs);
+            info.getRewards(level, numjobs, rewards);
+            double income = rewards[0];
             ChatColor incomeColor = income >= 0 ? ChatColor.GREEN : ChatColor.DARK_RED;
             
-            double xp = info.getExperience(level, numjobs);
+            double xp = rewards[1];
             ChatColor xpColor = xp >= 0 ? ChatColor.YELLOW : ChatColor.GRAY;
             String xpString = String.format("%.2f xp", xp);
             
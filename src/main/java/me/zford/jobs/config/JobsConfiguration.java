@@ -18,39 +18,43 @@
 
 package me.zford.jobs.config;
 
-import java.util.List;
-import java.util.ArrayList;
 import java.util.Locale;
 
+import me.zford.jobs.Location;
 import me.zford.jobs.Player;
 import me.zford.jobs.container.RestrictedArea;
 import me.zford.jobs.container.Title;
 
 public abstract class JobsConfiguration {
-    // all of the possible titles
-    protected List<Title> titles = new ArrayList<Title>();
-    protected ArrayList<RestrictedArea> restrictedAreas = new ArrayList<RestrictedArea>();
-    protected Locale locale;
-    protected int savePeriod;
-    protected boolean isBroadcastingSkillups;
-    protected boolean isBroadcastingLevelups;
-    protected boolean payInCreative;
-    protected boolean addXpPlayer;
-    protected boolean hideJobsWithoutPermission;
-    protected int maxJobs;
-    protected boolean payNearSpawner;
-    protected boolean modifyChat;
-    protected int economyBatchDelay;
-    protected boolean saveOnDisconnect;
+    // current settings, replaced as a whole on reload
+    private volatile JobsSettings settings = JobsSettings.DEFAULTS;
     
     public abstract void reload();
     
+    /**
+     * Publishes newly loaded settings
+     * @param settings - the settings
+     */
+    protected void setSettings(JobsSettings settings) {
+        this.settings = settings;
+    }
+    
+    /**
+     * Get the current settings snapshot
+     * 
+     * Read it once when several settings are needed together.
+     * @return the settings
+     */
+    public JobsSettings getSettings() {
+        return settings;
+    }
+    
     /**
      * Get how often in minutes to save job information
      * @return how often in minutes to save job information
      */
-    public synchronized int getSavePeriod() {
-        return savePeriod;
+    public int getSavePeriod() {
+        return settings.getSavePeriod();
     }
     
     /**
@@ -58,8 +62,8 @@ public abstract class JobsConfiguration {
      * @return true - broadcast on skill up
      * @return false - do not broadcast on skill up
      */
-    public synchronized boolean isBroadcastingSkillups() {
-        return isBroadcastingSkillups;
+    public boolean isBroadcastingSkillups() {
+        return settings.isBroadcastingSkillups();
     }
     
     /**
@@ -67,8 +71,8 @@ public abstract class JobsConfiguration {
      * @return true - broadcast on level up
      * @return false - do not broadcast on level up
      */
-    public synchronized boolean isBroadcastingLevelups() {
-        return isBroadcastingLevelups;
+    public boolean isBroadcastingLevelups() {
+        return settings.isBroadcastingLevelups();
     }
     
     /**
@@ -76,8 +80,8 @@ public abstract class JobsConfiguration {
      * @return true - pay in creative
      * @return false - do not pay in creative
      */
-    public synchronized boolean payInCreative() {
-        return payInCreative;
+    public boolean payInCreative() {
+        return settings.payInCreative();
     }
     
     /**
@@ -86,39 +90,27 @@ public abstract class JobsConfiguration {
      * @return null if no title matches
      */
     public Title getTitleForLevel(int level) {
-        Title title = null;
-        for (Title t: titles) {
-            if (title == null) {
-                if (t.getLevelReq() <= level) {
-                    title = t;
-                }
-            } else {
-                if (t.getLevelReq() <= level && t.getLevelReq() > title.getLevelReq()) {
-                    title = t;
-                }
-            }
-        }
-        return title;
+        return settings.getTitleIndex().get(level);
     }
     
-    public synchronized boolean addXpPlayer() {
-        return addXpPlayer;
+    public boolean addXpPlayer() {
+        return settings.addXpPlayer();
     }
     
     /**
      * Function to check if jobs should be hidden to players that lack permission to join the job
      * @return
      */
-    public synchronized boolean getHideJobsWithoutPermission() {
-        return hideJobsWithoutPermission;
+    public boolean getHideJobsWithoutPermission() {
+        return settings.getHideJobsWithoutPermission();
     }
     
     /**
      * Function to return the maximum number of jobs a player can join
      * @return
      */
-    public synchronized int getMaxJobs() {
-        return maxJobs;
+    public int getMaxJobs() {
+        return settings.getMaxJobs();
     }
     
     /**
@@ -126,8 +118,8 @@ public abstract class JobsConfiguration {
      * @return true - you get paid
      * @return false - you don't get paid
      */
-    public synchronized boolean payNearSpawner() {
-        return payNearSpawner;
+    public boolean payNearSpawner() {
+        return settings.payNearSpawner();
     }
     
     /**
@@ -135,27 +127,59 @@ public abstract class JobsConfiguration {
      * @param player
      * @return - the multiplier
      */
-    public synchronized double getRestrictedMultiplier(Player player) {
-        for(RestrictedArea area : restrictedAreas) {
-            if (area.inRestrictedArea(player))
-                return area.getMultiplier();
-        }
+    public double getRestrictedMultiplier(Player player) {
+        Location loc = player.getLocation();
+        RestrictedArea area = settings.getRestrictedAreaIndex().get(loc.getWorld(), loc.getX(), loc.getY(), loc.getZ());
+        if (area != null)
+            return area.getMultiplier();
         return 1.0;
     }
     
-    public synchronized boolean getModifyChat() {
-        return modifyChat;
+    public boolean getModifyChat() {
+        return settings.getModifyChat();
+    }
+    
+    public int getEconomyBatchDelay() {
+        return settings.getEconomyBatchDelay();
+    }
+    
+    public long getEconomyTickBudget() {
+        return settings.getEconomyTickBudget();
+    }
+    
+    public boolean isEconomyThreadSafe() {
+        return settings.isEconomyThreadSafe();
+    }
+    
+    public int getDebtRetryInterval() {
+        return settings.getDebtRetryInterval();
+    }
+    
+    public int getDebtMaxRetries() {
+        return settings.getDebtMaxRetries();
+    }
+    
+    public boolean isFixedPointMoney() {
+        return settings.isFixedPointMoney();
+    }
+    
+    public int getMoneyScale() {
+        return settings.getMoneyScale();
+    }
+    
+    public long getMoneyFactor() {
+        return settings.getMoneyFactor();
     }
     
-    public synchronized int getEconomyBatchDelay() {
-        return economyBatchDelay;
+    public int getPermissionCacheTime() {
+        return settings.getPermissionCacheTime();
     }
     
-    public synchronized boolean saveOnDisconnect() {
-        return saveOnDisconnect;
+    public boolean saveOnDisconnect() {
+        return settings.saveOnDisconnect();
     }
     
-    public synchronized Locale getLocale() {
-        return locale;
+    public Locale getLocale() {
+        return settings.getLocale();
     }
 }
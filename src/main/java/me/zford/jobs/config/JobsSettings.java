@@ -0,0 +1,344 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import me.zford.jobs.container.RestrictedArea;
+import me.zford.jobs.container.RestrictedAreaIndex;
+import me.zford.jobs.container.Title;
+import me.zford.jobs.container.TitleIndex;
+
+/**
+ * Immutable snapshot of the general configuration
+ * 
+ * A new snapshot is built on every reload and published as a whole, so readers
+ * never see a half loaded configuration and never need a lock.
+ */
+public final class JobsSettings {
+    private final Locale locale;
+    private final int savePeriod;
+    private final boolean isBroadcastingSkillups;
+    private final boolean isBroadcastingLevelups;
+    private final boolean payInCreative;
+    private final boolean addXpPlayer;
+    private final boolean hideJobsWithoutPermission;
+    private final int maxJobs;
+    private final boolean payNearSpawner;
+    private final boolean modifyChat;
+    private final int economyBatchDelay;
+    private final long economyTickBudget;
+    private final boolean economyThreadSafe;
+    private final int debtRetryInterval;
+    private final int debtMaxRetries;
+    private final boolean fixedPointMoney;
+    private final int moneyScale;
+    private final long moneyFactor;
+    private final int permissionCacheTime;
+    private final boolean saveOnDisconnect;
+    private final List<Title> titles;
+    private final List<RestrictedArea> restrictedAreas;
+    private final RestrictedAreaIndex restrictedAreaIndex;
+    private final TitleIndex titleIndex;
+    
+    /**
+     * Settings used before the configuration is loaded
+     */
+    public static final JobsSettings DEFAULTS = new Builder().build();
+    
+    private JobsSettings(Builder builder) {
+        this.locale = builder.locale;
+        this.savePeriod = builder.savePeriod;
+        this.isBroadcastingSkillups = builder.isBroadcastingSkillups;
+        this.isBroadcastingLevelups = builder.isBroadcastingLevelups;
+        this.payInCreative = builder.payInCreative;
+        this.addXpPlayer = builder.addXpPlayer;
+        this.hideJobsWithoutPermission = builder.hideJobsWithoutPermission;
+        this.maxJobs = builder.maxJobs;
+        this.payNearSpawner = builder.payNearSpawner;
+        this.modifyChat = builder.modifyChat;
+        this.economyBatchDelay = builder.economyBatchDelay;
+        this.economyTickBudget = builder.economyTickBudget;
+        this.economyThreadSafe = builder.economyThreadSafe;
+        this.debtRetryInterval = builder.debtRetryInterval;
+        this.debtMaxRetries = builder.debtMaxRetries;
+        this.fixedPointMoney = builder.fixedPointMoney;
+        this.moneyScale = builder.moneyScale;
+        long factor = 1;
+        for (int i = 0; i < builder.moneyScale; i++) {
+            factor *= 10;
+        }
+        this.moneyFactor = factor;
+        this.permissionCacheTime = builder.permissionCacheTime;
+        this.saveOnDisconnect = builder.saveOnDisconnect;
+        this.titles = Collections.unmodifiableList(new ArrayList<Title>(builder.titles));
+        this.restrictedAreas = Collections.unmodifiableList(new ArrayList<RestrictedArea>(builder.restrictedAreas));
+        this.restrictedAreaIndex = new RestrictedAreaIndex(this.restrictedAreas);
+        this.titleIndex = new TitleIndex(this.titles);
+    }
+    
+    public Locale getLocale() {
+        return locale;
+    }
+    
+    public int getSavePeriod() {
+        return savePeriod;
+    }
+    
+    public boolean isBroadcastingSkillups() {
+        return isBroadcastingSkillups;
+    }
+    
+    public boolean isBroadcastingLevelups() {
+        return isBroadcastingLevelups;
+    }
+    
+    public boolean payInCreative() {
+        return payInCreative;
+    }
+    
+    public boolean addXpPlayer() {
+        return addXpPlayer;
+    }
+    
+    public boolean getHideJobsWithoutPermission() {
+        return hideJobsWithoutPermission;
+    }
+    
+    public int getMaxJobs() {
+        return maxJobs;
+    }
+    
+    public boolean payNearSpawner() {
+        return payNearSpawner;
+    }
+    
+    public boolean getModifyChat() {
+        return modifyChat;
+    }
+    
+    public int getEconomyBatchDelay() {
+        return economyBatchDelay;
+    }
+    
+    public long getEconomyTickBudget() {
+        return economyTickBudget;
+    }
+    
+    /**
+     * Whether the economy provider may be called off the main thread
+     * @return true if payouts are made from the payment thread
+     */
+    public boolean isEconomyThreadSafe() {
+        return economyThreadSafe;
+    }
+    
+    public int getDebtRetryInterval() {
+        return debtRetryInterval;
+    }
+    
+    public int getDebtMaxRetries() {
+        return debtMaxRetries;
+    }
+    
+    public boolean isFixedPointMoney() {
+        return fixedPointMoney;
+    }
+    
+    public int getMoneyScale() {
+        return moneyScale;
+    }
+    
+    /**
+     * Gets the number of minor units in one unit of money
+     * @return 10 to the power of the money scale
+     */
+    public long getMoneyFactor() {
+        return moneyFactor;
+    }
+    
+    /**
+     * Gets how long cached payment permissions are trusted
+     * @return time in seconds, 0 if permissions are not cached
+     */
+    public int getPermissionCacheTime() {
+        return permissionCacheTime;
+    }
+    
+    public boolean saveOnDisconnect() {
+        return saveOnDisconnect;
+    }
+    
+    public List<Title> getTitles() {
+        return titles;
+    }
+    
+    public List<RestrictedArea> getRestrictedAreas() {
+        return restrictedAreas;
+    }
+    
+    public RestrictedAreaIndex getRestrictedAreaIndex() {
+        return restrictedAreaIndex;
+    }
+    
+    public TitleIndex getTitleIndex() {
+        return titleIndex;
+    }
+    
+    /**
+     * Builds a settings snapshot
+     * 
+     * Every setting starts at its default, so only loaded values need to be set.
+     */
+    public static class Builder {
+        private Locale locale = Locale.getDefault();
+        private int savePeriod = 10;
+        private boolean isBroadcastingSkillups = false;
+        private boolean isBroadcastingLevelups = false;
+        private boolean payInCreative = false;
+        private boolean addXpPlayer = false;
+        private boolean hideJobsWithoutPermission = false;
+        private int maxJobs = 3;
+        private boolean payNearSpawner = false;
+        private boolean modifyChat = true;
+        private int economyBatchDelay = 5;
+        private long economyTickBudget = 2000000L;
+        private boolean economyThreadSafe = false;
+        private int debtRetryInterval = 300;
+        private int debtMaxRetries = 5;
+        private boolean fixedPointMoney = false;
+        private int moneyScale = 2;
+        private int permissionCacheTime = 30;
+        private boolean saveOnDisconnect = false;
+        private List<Title> titles = new ArrayList<Title>();
+        private List<RestrictedArea> restrictedAreas = new ArrayList<RestrictedArea>();
+        
+        public Builder locale(Locale value) {
+            this.locale = value;
+            return this;
+        }
+        
+        public Builder savePeriod(int value) {
+            this.savePeriod = value;
+            return this;
+        }
+        
+        public Builder isBroadcastingSkillups(boolean value) {
+            this.isBroadcastingSkillups = value;
+            return this;
+        }
+        
+        public Builder isBroadcastingLevelups(boolean value) {
+            this.isBroadcastingLevelups = value;
+            return this;
+        }
+        
+        public Builder payInCreative(boolean value) {
+            this.payInCreative = value;
+            return this;
+        }
+        
+        public Builder addXpPlayer(boolean value) {
+            this.addXpPlayer = value;
+            return this;
+        }
+        
+        public Builder hideJobsWithoutPermission(boolean value) {
+            this.hideJobsWithoutPermission = value;
+            return this;
+        }
+        
+        public Builder maxJobs(int value) {
+            this.maxJobs = value;
+            return this;
+        }
+        
+        public Builder payNearSpawner(boolean value) {
+            this.payNearSpawner = value;
+            return this;
+        }
+        
+        public Builder modifyChat(boolean value) {
+            this.modifyChat = value;
+            return this;
+        }
+        
+        public Builder economyBatchDelay(int value) {
+            this.economyBatchDelay = value;
+            return this;
+        }
+        
+        public Builder economyTickBudget(long value) {
+            this.economyTickBudget = value;
+            return this;
+        }
+        
+        public Builder economyThreadSafe(boolean value) {
+            this.economyThreadSafe = value;
+            return this;
+        }
+        
+        public Builder debtRetryInterval(int value) {
+            this.debtRetryInterval = value;
+            return this;
+        }
+        
+        public Builder debtMaxRetries(int value) {
+            this.debtMaxRetries = value;
+            return this;
+        }
+        
+        public Builder fixedPointMoney(boolean value) {
+            this.fixedPointMoney = value;
+            return this;
+        }
+        
+        public Builder moneyScale(int value) {
+            this.moneyScale = value;
+            return this;
+        }
+        
+        public Builder permissionCacheTime(int value) {
+            this.permissionCacheTime = value;
+            return this;
+        }
+        
+        public Builder saveOnDisconnect(boolean value) {
+            this.saveOnDisconnect = value;
+            return this;
+        }
+        
+        public Builder titles(List<Title> value) {
+            this.titles = value;
+            return this;
+        }
+        
+        public Builder restrictedAreas(List<RestrictedArea> value) {
+            this.restrictedAreas = value;
+            return this;
+        }
+        
+        public JobsSettings build() {
+            return new JobsSettings(this);
+        }
+    }
+}
@@ -22,4 +22,14 @@ public interface ActionInfo {
     public String getName();
     public String getNameWithSub();
     public ActionType getType();
+    /**
+     * Numeric key of the material or entity, unique within an action type
+     * @return the id
+     */
+    public int getId();
+    /**
+     * Numeric key of the subtype
+     * @return the subtype id, JobInfo.NO_SUBTYPE if the action has no subtype
+     */
+    public int getSubId();
 }
@@ -18,17 +18,22 @@
 
 package me.zford.jobs.container;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
-import java.util.Map;
 
+import me.zford.jobs.resources.jfep.CompiledExpression;
 import me.zford.jobs.resources.jfep.Parser;
 import me.zford.jobs.util.ChatColor;
 
 public class Job {
     // job info
     private EnumMap<ActionType, List<JobInfo>> jobInfo = new EnumMap<ActionType, List<JobInfo>>(ActionType.class);
+    // job info lookup, indexed by action type ordinal
+    private JobInfoIndex[] jobInfoIndex = new JobInfoIndex[ActionType.values().length];
+    // bit per action type ordinal, set when the job rewards that action
+    private int actionMask;
     // permissions
     private List<JobPermission> jobPermissions;
     // job name
@@ -41,6 +46,13 @@ public class Job {
     private ChatColor jobColour;
     // job leveling equation
     private Parser maxExpEquation;
+    // compiled leveling equation, null if it uses random numbers
+    private CompiledExpression maxExpCurveEquation;
+    // max experience, indexed by numjobs and level - 1, extended as levels are reached
+    private volatile double[][] maxExpCurve = new double[0][];
+    // highest level and number of jobs kept in the max experience curve
+    private static final int MAX_EXP_CURVE_LEVELS = 10000;
+    private static final int MAX_EXP_CURVE_NUMJOBS = 64;
     // display method
     private DisplayMethod displayMethod;
     // max level
@@ -74,6 +86,8 @@ public class Job {
         this.description = description;
         this.jobColour = jobColour;
         this.maxExpEquation = maxExpEquation;
+        if (!maxExpEquation.getParsedFunctions().contains("rand"))
+            this.maxExpCurveEquation = maxExpEquation.compile("joblevel", "numjobs");
         this.displayMethod = displayMethod;
         this.maxLevel = maxLevel;
         this.maxSlots = maxSlots;
@@ -87,6 +101,19 @@ public class Job {
      */
     public void setJobInfo(ActionType type, List<JobInfo> info) {
         jobInfo.put(type, info);
+        jobInfoIndex[type.ordinal()] = new JobInfoIndex(info);
+        if (info.isEmpty())
+            actionMask &= ~(1 << type.ordinal());
+        else
+            actionMask |= 1 << type.ordinal();
+    }
+    
+    /**
+     * Gets the action types this job rewards
+     * @return bit mask indexed by action type ordinal
+     */
+    public int getActionMask() {
+        return actionMask;
     }
     
     /**
@@ -100,37 +127,29 @@ public class Job {
     }
     
     /**
-     * Function to get the income for an action
-     * @param action - The action info
-     * @param level - players job level
-     * @param numjobs - number of jobs for the player
-     * @return the income received for performing action
+     * Precomputes income and experience tables of all job info
+     * @param maxNumJobs - the highest number of jobs a player can hold
      */
-    
-    public Double getIncome(ActionInfo action, int level, int numjobs) {
-        List<JobInfo> jobInfo = getJobInfo(action.getType());
-        for (JobInfo info : jobInfo) {
-            if (info.getName().equals(action.getName()) || info.getName().equals(action.getNameWithSub()))
-                return info.getIncome(level, numjobs);
+    public void buildTables(int maxNumJobs) {
+        for (List<JobInfo> infos : jobInfo.values()) {
+            for (JobInfo info : infos) {
+                info.buildTables(maxLevel, maxNumJobs);
+            }
         }
-        return null;
     }
     
     /**
-     * Function to get the income for an action
+     * Finds the job info matching an action
+     * 
+     * Resolve the action once and read both income and experience from the result.
      * @param action - The action info
-     * @param level - players job level
-     * @param numjobs - number of jobs for the player
-     * @return the income received for performing action
+     * @return the job info, null if this job has none for the action
      */
-    
-    public Double getExperience(ActionInfo action, int level, int numjobs) {
-        List<JobInfo> jobInfo = getJobInfo(action.getType());
-        for (JobInfo info : jobInfo) {
-            if (info.getName().equals(action.getName()) || info.getName().equals(action.getNameWithSub()))
-                return info.getExperience(level, numjobs);
-        }
-        return null;
+    public JobInfo getJobInfo(ActionInfo action) {
+        JobInfoIndex index = jobInfoIndex[action.getType().ordinal()];
+        if (index == null)
+            return null;
+        return index.get(action.getId(), action.getSubId());
     }
     
     /**
@@ -175,14 +194,64 @@ public class Job {
     
     /**
      * Function to return the appropriate max exp for this level
+     * 
+     * Values are kept in a curve that is extended as higher levels are reached.
      * @param level - current level
+     * @param numjobs - number of jobs for the player
      * @return the correct max exp for this level
      */
-    public double getMaxExp(Map<String, Double> param) {
-        for (Map.Entry<String, Double> temp: param.entrySet()) {
-            maxExpEquation.setVariable(temp.getKey(), temp.getValue());
+    public double getMaxExp(int level, int numjobs) {
+        if (maxExpCurveEquation == null || level < 1 || level > MAX_EXP_CURVE_LEVELS
+                || numjobs < 0 || numjobs > MAX_EXP_CURVE_NUMJOBS) {
+            synchronized (maxExpEquation) {
+                maxExpEquation.setVariable("joblevel", level);
+                maxExpEquation.setVariable("numjobs", numjobs);
+                return maxExpEquation.getValue();
+            }
+        }
+        double[][] curve = maxExpCurve;
+        if (numjobs < curve.length) {
+            double[] row = curve[numjobs];
+            if (row != null && level <= row.length)
+                return row[level - 1];
+        }
+        return extendMaxExpCurve(level, numjobs);
+    }
+    
+    /**
+     * Extends the max experience curve to cover a level
+     * @param level - the level
+     * @param numjobs - number of jobs for the player
+     * @return the max exp for this level
+     */
+    private synchronized double extendMaxExpCurve(int level, int numjobs) {
+        double[][] curve = maxExpCurve;
+        if (numjobs >= curve.length)
+            curve = Arrays.copyOf(curve, numjobs + 1);
+        else
+            curve = curve.clone();
+        
+        double[] row = curve[numjobs];
+        int oldLength = row == null ? 0 : row.length;
+        if (level > oldLength) {
+            // grow geometrically, but not past the max level unless asked to
+            int newLength = Math.max(level, Math.max(oldLength * 2, 16));
+            if (maxLevel > 0)
+                newLength = Math.min(newLength, Math.max(level, maxLevel));
+            newLength = Math.min(newLength, MAX_EXP_CURVE_LEVELS);
+            double[] extended = new double[newLength];
+            if (row != null)
+                System.arraycopy(row, 0, extended, 0, oldLength);
+            double[] values = new double[] {0, numjobs};
+            for (int i = oldLength; i < newLength; i++) {
+                values[0] = i + 1;
+                extended[i] = maxExpCurveEquation.evaluate(values);
+            }
+            curve[numjobs] = extended;
+            row = extended;
         }
-        return maxExpEquation.getValue();        
+        maxExpCurve = curve;
+        return row[level - 1];
     }
 
     /**
@@ -18,24 +18,65 @@
 
 package me.zford.jobs.container;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import me.zford.jobs.resources.jfep.CompiledExpression;
 import me.zford.jobs.resources.jfep.Parser;
 
 public class JobInfo {
+    // subtype id of entries that match any subtype
+    public static final int NO_SUBTYPE = -1;
+    // highest level kept in the income and experience tables
+    private static final int LEVEL_TABLE_LIMIT = 1000;
+    
     private String name;
+    private int id, subId;
     private double baseIncome, baseXp;
-    private Parser moneyEquation, xpEquation;
-    public JobInfo(String name, double baseIncome, Parser moneyEquation, double baseXp, Parser xpEquation) {
+    private CompiledExpression moneyEquation, xpEquation;
+    // equations use rand() and must be evaluated every time
+    private boolean random;
+    // precomputed values, indexed by (level - 1) * numjobsCount + numjobs
+    private double[] incomeTable, xpTable;
+    // lazily computed rows, indexed by level - 1, holding income then experience for each numjobs
+    private AtomicReferenceArray<double[]> tableRows;
+    private int numjobsCount;
+    /**
+     * Constructor
+     * @param name - the name, with ":subtype" appended if it has one
+     * @param id - numeric key matching ActionInfo.getId(), negative if no action can match
+     * @param subId - numeric subtype matching ActionInfo.getSubId(), NO_SUBTYPE if none
+     * @param baseIncome - the base income
+     * @param moneyEquation - the income equation
+     * @param baseXp - the base experience
+     * @param xpEquation - the experience equation
+     */
+    public JobInfo(String name, int id, int subId, double baseIncome, Parser moneyEquation, double baseXp, Parser xpEquation) {
         this.name = name;
+        this.id = id;
+        this.subId = subId;
         this.baseIncome = baseIncome;
-        this.moneyEquation = moneyEquation;
+        this.moneyEquation = moneyEquation.compile("joblevel", "numjobs", "baseincome");
         this.baseXp = baseXp;
-        this.xpEquation = xpEquation;
+        this.xpEquation = xpEquation.compile("joblevel", "numjobs", "baseexperience");
+        this.random = isRandom(moneyEquation) || isRandom(xpEquation);
     }
     
     public String getName() {
         return name;
     }
     
+    public int getId() {
+        return id;
+    }
+    
+    public int getSubId() {
+        return subId;
+    }
+    
+    public boolean hasSubType() {
+        return subId != NO_SUBTYPE;
+    }
+    
     public double getBaseIncome() {
         return baseIncome;
     }
@@ -44,17 +85,95 @@ public class JobInfo {
         return baseXp;
     }
     
-    public double getIncome(int level, int numjobs) {
-        moneyEquation.setVariable("joblevel", level);
-        moneyEquation.setVariable("numjobs", numjobs);
-        moneyEquation.setVariable("baseincome", baseIncome);
-        return moneyEquation.getValue();
+    /**
+     * Precomputes income and experience for every level and number of jobs
+     * 
+     * Levels up to the max level are computed now.  Jobs without a max level, or with
+     * a very high one, get a table that is filled in as levels are reached.  Equations
+     * using random numbers are never tabled.
+     * @param maxLevel - the max level of the job, 0 for no max level
+     * @param maxNumJobs - the highest number of jobs a player can hold
+     */
+    public void buildTables(int maxLevel, int maxNumJobs) {
+        incomeTable = null;
+        xpTable = null;
+        tableRows = null;
+        if (random)
+            return;
+        
+        numjobsCount = maxNumJobs + 1;
+        if (maxLevel > 0 && maxLevel <= LEVEL_TABLE_LIMIT) {
+            double[] income = new double[maxLevel * numjobsCount];
+            double[] xp = new double[maxLevel * numjobsCount];
+            for (int level = 1; level <= maxLevel; level++) {
+                for (int numjobs = 0; numjobs < numjobsCount; numjobs++) {
+                    int i = (level - 1) * numjobsCount + numjobs;
+                    income[i] = computeIncome(level, numjobs);
+                    xp[i] = computeExperience(level, numjobs);
+                }
+            }
+            incomeTable = income;
+            xpTable = xp;
+        } else {
+            tableRows = new AtomicReferenceArray<double[]>(LEVEL_TABLE_LIMIT);
+        }
+    }
+    
+    private static boolean isRandom(Parser equation) {
+        return equation.getParsedFunctions().contains("rand");
+    }
+    
+    /**
+     * Gets the lazily computed row for a level
+     * @param level - the level
+     * @return income for each numjobs, followed by experience for each numjobs
+     */
+    private double[] getTableRow(int level) {
+        double[] row = tableRows.get(level - 1);
+        if (row == null) {
+            row = new double[numjobsCount * 2];
+            for (int numjobs = 0; numjobs < numjobsCount; numjobs++) {
+                row[numjobs] = computeIncome(level, numjobs);
+                row[numjobsCount + numjobs] = computeExperience(level, numjobs);
+            }
+            tableRows.set(level - 1, row);
+        }
+        return row;
+    }
+    
+    /**
+     * Gets the income and experience for a level in a single lookup
+     * @param level - the job level
+     * @param numjobs - number of jobs for the player
+     * @param rewards - filled with the income at index 0 and the experience at index 1
+     */
+    public void getRewards(int level, int numjobs, double[] rewards) {
+        if (level > 0 && numjobs >= 0 && numjobs < numjobsCount) {
+            double[] income = incomeTable;
+            double[] xp = xpTable;
+            if (income != null && xp != null) {
+                int i = (level - 1) * numjobsCount + numjobs;
+                if (i < income.length) {
+                    rewards[0] = income[i];
+                    rewards[1] = xp[i];
+                    return;
+                }
+            } else if (tableRows != null && level <= tableRows.length()) {
+                double[] row = getTableRow(level);
+                rewards[0] = row[numjobs];
+                rewards[1] = row[numjobsCount + numjobs];
+                return;
+            }
+        }
+        rewards[0] = computeIncome(level, numjobs);
+        rewards[1] = computeExperience(level, numjobs);
+    }
+    
+    private double computeIncome(int level, int numjobs) {
+        return moneyEquation.evaluate(new double[] {level, numjobs, baseIncome});
     }
     
-    public double getExperience(int level, int numjobs) {
-        xpEquation.setVariable("joblevel", level);
-        xpEquation.setVariable("numjobs", numjobs);
-        xpEquation.setVariable("baseexperience", baseXp);
-        return xpEquation.getValue();
+    private double computeExperience(int level, int numjobs) {
+        return xpEquation.evaluate(new double[] {level, numjobs, baseXp});
     }
 }
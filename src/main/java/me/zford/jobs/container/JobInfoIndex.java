@@ -0,0 +1,120 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.container;
+
+import java.util.List;
+
+/**
+ * Lookup table from action keys to job info
+ * 
+ * Entries without a subtype are stored in an array indexed by id, entries with a
+ * subtype in an open addressing table keyed by (id, subtype).  When both would match
+ * an action, the one listed first in the configuration wins, same as a linear scan.
+ */
+public class JobInfoIndex {
+    private JobInfo[] base;
+    private long[] subKeys;
+    private JobInfo[] subValues;
+    private int subMask;
+    
+    /**
+     * Builds the index
+     * @param infos - job info in configuration order
+     */
+    public JobInfoIndex(List<JobInfo> infos) {
+        int maxId = -1;
+        int subCount = 0;
+        for (JobInfo info : infos) {
+            if (info.getId() < 0)
+                continue;
+            if (info.getId() > maxId)
+                maxId = info.getId();
+            if (info.hasSubType())
+                subCount++;
+        }
+        
+        base = new JobInfo[maxId + 1];
+        int[] basePosition = new int[maxId + 1];
+        for (int i = 0; i < infos.size(); i++) {
+            JobInfo info = infos.get(i);
+            if (info.getId() < 0 || info.hasSubType() || base[info.getId()] != null)
+                continue;
+            base[info.getId()] = info;
+            basePosition[info.getId()] = i;
+        }
+        
+        if (subCount == 0)
+            return;
+        int capacity = 2;
+        while (capacity < subCount * 2)
+            capacity <<= 1;
+        subKeys = new long[capacity];
+        subValues = new JobInfo[capacity];
+        subMask = capacity - 1;
+        for (int i = 0; i < infos.size(); i++) {
+            JobInfo info = infos.get(i);
+            if (info.getId() < 0 || !info.hasSubType())
+                continue;
+            // an earlier entry without subtype already matches every subtype
+            if (base[info.getId()] != null && basePosition[info.getId()] < i)
+                continue;
+            long key = key(info.getId(), info.getSubId());
+            int slot = slot(key);
+            while (subValues[slot] != null && subKeys[slot] != key)
+                slot = (slot + 1) & subMask;
+            if (subValues[slot] == null) {
+                subKeys[slot] = key;
+                subValues[slot] = info;
+            }
+        }
+    }
+    
+    /**
+     * Finds the job info matching an action
+     * @param id - the action id
+     * @param subId - the action subtype id
+     * @return the job info, null if none matches
+     */
+    public JobInfo get(int id, int subId) {
+        if (id < 0)
+            return null;
+        if (subValues != null && subId != JobInfo.NO_SUBTYPE) {
+            long key = key(id, subId);
+            int slot = slot(key);
+            JobInfo info;
+            while ((info = subValues[slot]) != null) {
+                if (subKeys[slot] == key)
+                    return info;
+                slot = (slot + 1) & subMask;
+            }
+        }
+        if (id < base.length)
+            return base[id];
+        return null;
+    }
+    
+    private static long key(int id, int subId) {
+        return ((long) id << 32) | (subId & 0xFFFFFFFFL);
+    }
+    
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & subMask;
+    }
+}
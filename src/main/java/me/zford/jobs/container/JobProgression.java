@@ -18,20 +18,49 @@
 
 package me.zford.jobs.container;
 
-import java.util.HashMap;
-
 public class JobProgression {
     private Job job;
     private JobsPlayer jPlayer;
     private double experience;
     private int level;
     private transient int maxExperience = -1;
+    // row values last written to the database, guarded by the save lock
+    private transient int persistedExperience;
+    private transient int persistedLevel;
+    // whether this row changed since it was last written
+    private transient boolean dirty = false;
     
     public JobProgression(Job job, JobsPlayer jPlayer, int level, double experience) {
         this.job = job;
         this.jPlayer = jPlayer;
         this.experience = experience;
         this.level = level;
+        this.persistedExperience = (int) experience;
+        this.persistedLevel = level;
+    }
+    
+    /**
+     * Whether the row of this job differs from what was last written
+     * @return true if the row needs to be written
+     */
+    public boolean isDirty() {
+        synchronized (jPlayer.saveLock) {
+            return dirty && ((int) experience != persistedExperience || level != persistedLevel);
+        }
+    }
+    
+    /**
+     * Records that a row was written to the database
+     * @param experience - the experience written
+     * @param level - the level written
+     */
+    public void setPersisted(int experience, int level) {
+        synchronized (jPlayer.saveLock) {
+            persistedExperience = experience;
+            persistedLevel = level;
+            // an older write may land after a newer one, so compare the values
+            dirty = (int) this.experience != experience || this.level != level;
+        }
     }
     
     /**
@@ -58,7 +87,13 @@ public class JobProgression {
     public void setJob(Job job) {
         synchronized (jPlayer.saveLock) {
             jPlayer.setSaved(false);
+            // row of a different job was never written, a reloaded job keeps its row
+            if (!this.job.getName().equals(job.getName())) {
+                persistedExperience = -1;
+                persistedLevel = -1;
+            }
             this.job = job;
+            dirty = true;
             reloadMaxExperienceAndCheckLevelUp();
         }
     }
@@ -79,6 +114,7 @@ public class JobProgression {
     public boolean addExperience(double experience) {
         synchronized (jPlayer.saveLock) {
             jPlayer.setSaved(false);
+            dirty = true;
             this.experience += experience;
             return checkLevelUp();
         }
@@ -107,6 +143,7 @@ public class JobProgression {
     public void setLevel(int level) {
         synchronized (jPlayer.saveLock) {
             jPlayer.setSaved(false);
+            dirty = true;
             this.level = level;
             reloadMaxExperienceAndCheckLevelUp();
         }
@@ -116,10 +153,7 @@ public class JobProgression {
      * Reloads max experience
      */
     public void reloadMaxExperience() {
-        HashMap<String, Double> param = new HashMap<String, Double>();
-        param.put("joblevel", (double) level);
-        param.put("numjobs", (double) jPlayer.getJobProgression().size());
-        this.maxExperience = (int) job.getMaxExp(param);
+        this.maxExperience = (int) job.getMaxExp(level, jPlayer.getJobCount());
     }
     
     /**
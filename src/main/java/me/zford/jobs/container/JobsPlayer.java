@@ -26,6 +26,7 @@ import me.zford.jobs.Jobs;
 import me.zford.jobs.config.ConfigManager;
 import me.zford.jobs.dao.JobsDAO;
 import me.zford.jobs.dao.JobsDAOData;
+import me.zford.jobs.dao.JobsWrite;
 import me.zford.jobs.util.ChatColor;
 
 public class JobsPlayer {
@@ -37,8 +38,23 @@ public class JobsPlayer {
     private String honorific;
     // player save status
     private volatile boolean isSaved = true;
+    // incremented on every change, guarded by saveLock
+    private long version = 0;
     // player online status
     private volatile boolean isOnline = false;
+    // action types rewarded by any of the player's jobs, by ordinal
+    private volatile int actionMask = 0;
+    // cached payment eligibility flags, ELIGIBILITY_UNKNOWN until computed
+    private volatile int eligibility = ELIGIBILITY_UNKNOWN;
+    // time after which the cached eligibility flags are computed again
+    private volatile long eligibilityExpiry = 0;
+    // incremented by every invalidation, guarded by eligibilityLock
+    private int eligibilityGeneration = 0;
+    private final Object eligibilityLock = new Object();
+    
+    public static final int ELIGIBILITY_UNKNOWN = -1;
+    // has jobs.use and the permission for the current world
+    public static final int ELIGIBLE_WORLD = 1;
     
     // save lock
     public final Object saveLock = new Object();
@@ -71,6 +87,89 @@ public class JobsPlayer {
                 }
             }
             reloadMaxExperience();
+            reloadActionMask();
+        }
+    }
+    
+    /**
+     * Reloads the action types rewarded by the player's jobs
+     * 
+     * Players without a job are paid by the none job.
+     */
+    public void reloadActionMask() {
+        synchronized (saveLock) {
+            int mask = 0;
+            if (progression.isEmpty()) {
+                Job noneJob = Jobs.getNoneJob();
+                if (noneJob != null)
+                    mask = noneJob.getActionMask();
+            } else {
+                for (JobProgression prog : progression) {
+                    mask |= prog.getJob().getActionMask();
+                }
+            }
+            actionMask = mask;
+        }
+    }
+    
+    /**
+     * Checks if any of the player's jobs rewards an action type
+     * @param type - the action type
+     * @return true if the action can pay the player
+     */
+    public boolean hasActionType(ActionType type) {
+        return (actionMask & (1 << type.ordinal())) != 0;
+    }
+    
+    /**
+     * Gets the cached payment eligibility flags
+     * @param now - the current time in milliseconds
+     * @return the eligibility flags, or ELIGIBILITY_UNKNOWN if not computed or expired
+     */
+    public int getEligibility(long now) {
+        // expiry is written after the flags, so read it first
+        if (now >= eligibilityExpiry)
+            return ELIGIBILITY_UNKNOWN;
+        return eligibility;
+    }
+    
+    /**
+     * Gets the eligibility generation, read before computing the flags
+     * @return the current generation
+     */
+    public int getEligibilityGeneration() {
+        synchronized (eligibilityLock) {
+            return eligibilityGeneration;
+        }
+    }
+    
+    /**
+     * Caches the payment eligibility flags
+     * 
+     * Flags computed before an invalidation are dropped.
+     * @param flags - the eligibility flags
+     * @param generation - the generation read before computing the flags
+     * @param expiry - the time in milliseconds after which the flags are computed again
+     */
+    public void setEligibility(int flags, int generation, long expiry) {
+        synchronized (eligibilityLock) {
+            if (generation != eligibilityGeneration)
+                return;
+            eligibility = flags;
+            eligibilityExpiry = expiry;
+        }
+    }
+    
+    /**
+     * Forgets the cached payment eligibility
+     * 
+     * Must be called whenever the world or permissions of the player change.
+     */
+    public void invalidateEligibility() {
+        synchronized (eligibilityLock) {
+            eligibilityGeneration++;
+            eligibility = ELIGIBILITY_UNKNOWN;
+            eligibilityExpiry = 0;
         }
     }
     
@@ -91,6 +190,14 @@ public class JobsPlayer {
         return Collections.unmodifiableList(progression);
     }
     
+    /**
+     * Get the number of jobs this player has
+     * @return the number of jobs
+     */
+    public int getJobCount() {
+        return progression.size();
+    }
+    
     /**
      * Get the job progression with the certain job
      * @return the job progression
@@ -124,6 +231,7 @@ public class JobsPlayer {
             if (!isInJob(job)) {
                 progression.add(new JobProgression(job, this, 1, 0.0));
                 reloadMaxExperience();
+                reloadActionMask();
                 reloadHonorific();
                 Jobs.getPermissionHandler().recalculatePermissions(this);
                 return true;
@@ -142,6 +250,7 @@ public class JobsPlayer {
             if (prog != null) {
                 progression.remove(prog);
                 reloadMaxExperience();
+                reloadActionMask();
                 reloadHonorific();
                 Jobs.getPermissionHandler().recalculatePermissions(this);
                 return true;
@@ -157,6 +266,7 @@ public class JobsPlayer {
     public boolean leaveAllJobs() {
         synchronized (saveLock) {
             progression.clear();
+            reloadActionMask();
             reloadHonorific();
             Jobs.getPermissionHandler().recalculatePermissions(this);;
             return true;
@@ -240,6 +350,7 @@ public class JobsPlayer {
                         prog.setLevel(newjob.getMaxLevel());
                     }
                     reloadMaxExperience();
+                    reloadActionMask();
                     reloadHonorific();
                     Jobs.getPermissionHandler().recalculatePermissions(this);;
                     return true;
@@ -285,7 +396,7 @@ public class JobsPlayer {
             if (numJobs == 1) {
                 if (method.equals(DisplayMethod.FULL) || method.equals(DisplayMethod.TITLE)) {
                     if (title != null) {
-                        builder.append(title.getChatColor() + title.getName() + ChatColor.WHITE);
+                        builder.append(title.getColoredName());
                         gotTitle = true;
                     }
                 }
@@ -304,7 +415,7 @@ public class JobsPlayer {
                     method.equals(DisplayMethod.SHORT_TITLE)) {
                 // add title to honorific
                 if (title != null) {
-                    builder.append(title.getChatColor() + title.getShortName() + ChatColor.WHITE);
+                    builder.append(title.getColoredShortName());
                     gotTitle = true;
                 }
             }
@@ -322,14 +433,61 @@ public class JobsPlayer {
     
     /**
      * Performs player save
+     * 
+     * The database write happens outside the save lock, so progression changes are never blocked by it.
      * @param dao
      */
     public void save(JobsDAO dao) {
+        // rows must not be written by the write queue at the same time
+        synchronized (Jobs.getWriteQueue().writeLock) {
+            JobsPlayerSnapshot snapshot;
+            synchronized (saveLock) {
+                if (isSaved())
+                    return;
+                snapshot = snapshot();
+            }
+            if (dao.save(snapshot)) {
+                markSaved(snapshot);
+                Jobs.getPlayerManager().bumpWriteGeneration(playername);
+            } else {
+                Jobs.getPlayerManager().markDirty(this);
+            }
+        }
+    }
+    
+    /**
+     * Takes an immutable copy of the job progression for saving
+     * 
+     * Only rows that changed since they were last written are included.
+     * @return the snapshot
+     */
+    public JobsPlayerSnapshot snapshot() {
+        synchronized (saveLock) {
+            ArrayList<JobsDAOData> jobs = new ArrayList<JobsDAOData>(progression.size());
+            for (JobProgression prog : progression) {
+                if (prog.isDirty())
+                    jobs.add(new JobsDAOData(prog.getJob().getName(), (int) prog.getExperience(), prog.getLevel()));
+            }
+            return new JobsPlayerSnapshot(playername, jobs, version);
+        }
+    }
+    
+    /**
+     * Marks the player as saved, unless it changed after the snapshot was taken
+     * @param snapshot - the snapshot that was written
+     */
+    public void markSaved(JobsPlayerSnapshot snapshot) {
         synchronized (saveLock) {
-            if (!isSaved()) {
-                dao.save(this);
-                setSaved(true);
+            for (JobsDAOData row : snapshot.getJobs()) {
+                for (JobProgression prog : progression) {
+                    if (prog.getJob().getName().equals(row.getJobName())) {
+                        prog.setPersisted((int) row.getExperience(), row.getLevel());
+                        break;
+                    }
+                }
             }
+            if (version == snapshot.getVersion())
+                isSaved = true;
         }
     }
     
@@ -337,6 +495,7 @@ public class JobsPlayer {
      * Perform connect
      */
     public void onConnect() {
+        invalidateEligibility();
         isOnline = true;
     }
     
@@ -356,11 +515,40 @@ public class JobsPlayer {
         return isOnline;
     }
     
+    /**
+     * Marks the player as saved if the written rows still hold its current values
+     * 
+     * Called once queued writes of the player were committed.
+     * @param rows - the rows written for the player
+     */
+    public void markWritten(List<JobsWrite> rows) {
+        synchronized (saveLock) {
+            for (JobProgression prog : progression) {
+                JobsWrite written = null;
+                for (JobsWrite row : rows) {
+                    if (row.getJobName().equals(prog.getJob().getName()))
+                        written = row;
+                }
+                if (written == null || written.isDelete())
+                    return;
+                if (written.getExperience() != (int) prog.getExperience() || written.getLevel() != prog.getLevel())
+                    return;
+            }
+            isSaved = true;
+        }
+    }
+    
     public boolean isSaved() {
         return isSaved;
     }
     
     public void setSaved(boolean value) {
-        isSaved = value;
+        synchronized (saveLock) {
+            isSaved = value;
+            if (!value) {
+                version++;
+                Jobs.getPlayerManager().markDirty(this);
+            }
+        }
     }
 }
@@ -0,0 +1,63 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.container;
+
+import java.util.Collections;
+import java.util.List;
+
+import me.zford.jobs.dao.JobsDAOData;
+
+/**
+ * Immutable copy of the job progression of a player, taken for saving
+ */
+public class JobsPlayerSnapshot {
+    private final String playername;
+    private final List<JobsDAOData> jobs;
+    private final long version;
+    
+    public JobsPlayerSnapshot(String playername, List<JobsDAOData> jobs, long version) {
+        this.playername = playername;
+        this.jobs = Collections.unmodifiableList(jobs);
+        this.version = version;
+    }
+    
+    /**
+     * Get the name of the player
+     * @return the player name
+     */
+    public String getName() {
+        return playername;
+    }
+    
+    /**
+     * Get the job rows of the player
+     * @return the job rows
+     */
+    public List<JobsDAOData> getJobs() {
+        return jobs;
+    }
+    
+    /**
+     * Get the change version of the player when the snapshot was taken
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+}
@@ -56,14 +56,41 @@ public class RestrictedArea {
      * @return false - the location is outside the restricted area
      */
     public boolean inRestrictedArea(Player player) {
-        if(isBetween(player.getLocation().getX(), this.location1.getX(), this.location2.getX()) &&
-                isBetween(player.getLocation().getY(), this.location1.getY(), this.location2.getY()) &&
-                isBetween(player.getLocation().getZ(), this.location1.getZ(), this.location2.getZ()) &&
-                this.location1.getWorld().equals(player.getLocation().getWorld()) &&
-                this.location2.getWorld().equals(player.getLocation().getWorld())) {
-            return true;
-        }
-        return false;
+        Location loc = player.getLocation();
+        return contains(loc.getWorld(), loc.getX(), loc.getY(), loc.getZ());
+    }
+    
+    /**
+     * Function check if a position is in the restricted area
+     * @param world - the world name
+     * @param x - the x coordinate
+     * @param y - the y coordinate
+     * @param z - the z coordinate
+     * @return true - the position is inside the restricted area
+     * @return false - the position is outside the restricted area
+     */
+    public boolean contains(String world, double x, double y, double z) {
+        return isBetween(x, this.location1.getX(), this.location2.getX()) &&
+                isBetween(y, this.location1.getY(), this.location2.getY()) &&
+                isBetween(z, this.location1.getZ(), this.location2.getZ()) &&
+                this.location1.getWorld().equals(world) &&
+                this.location2.getWorld().equals(world);
+    }
+    
+    /**
+     * Get the first corner of the restricted area
+     * @return the first corner
+     */
+    public Location getLocation1() {
+        return location1;
+    }
+    
+    /**
+     * Get the second corner of the restricted area
+     * @return the second corner
+     */
+    public Location getLocation2() {
+        return location2;
     }
     
     /**
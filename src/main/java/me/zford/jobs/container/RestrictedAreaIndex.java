@@ -0,0 +1,193 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.container;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Spatial index of restricted areas
+ * 
+ * Areas are bucketed per world into a grid of 16x16 columns, so a lookup only tests
+ * the areas overlapping the column of the position.  Areas spanning too many columns
+ * are tested on every lookup in their world instead.  When areas overlap, the one
+ * listed first in the configuration wins.
+ */
+public class RestrictedAreaIndex {
+    // areas covering more grid cells than this are not bucketed
+    private static final int MAX_CELLS_PER_AREA = 1024;
+    private static final int CELL_SHIFT = 4;
+    
+    private RestrictedArea[] areas;
+    private HashMap<String, WorldIndex> worlds = new HashMap<String, WorldIndex>();
+    
+    /**
+     * Builds the index
+     * @param list - restricted areas in configuration order
+     */
+    public RestrictedAreaIndex(List<RestrictedArea> list) {
+        areas = list.toArray(new RestrictedArea[list.size()]);
+        HashMap<String, WorldBuilder> builders = new HashMap<String, WorldBuilder>();
+        for (int i = 0; i < areas.length; i++) {
+            RestrictedArea area = areas[i];
+            String world = area.getLocation1().getWorld();
+            // areas spanning two worlds never match
+            if (world == null || !world.equals(area.getLocation2().getWorld()))
+                continue;
+            WorldBuilder builder = builders.get(world);
+            if (builder == null) {
+                builder = new WorldBuilder();
+                builders.put(world, builder);
+            }
+            builder.add(i, area);
+        }
+        for (String world : builders.keySet()) {
+            worlds.put(world, builders.get(world).build());
+        }
+    }
+    
+    /**
+     * Finds the restricted area containing a position
+     * @param world - the world name
+     * @param x - the x coordinate
+     * @param y - the y coordinate
+     * @param z - the z coordinate
+     * @return the first configured area containing the position, null if none
+     */
+    public RestrictedArea get(String world, double x, double y, double z) {
+        WorldIndex index = worlds.get(world);
+        if (index == null)
+            return null;
+        int best = Integer.MAX_VALUE;
+        int[] candidates = index.getCell(cell(x), cell(z));
+        if (candidates != null) {
+            for (int i : candidates) {
+                if (areas[i].contains(world, x, y, z)) {
+                    best = i;
+                    break;
+                }
+            }
+        }
+        for (int i : index.large) {
+            if (i > best)
+                break;
+            if (areas[i].contains(world, x, y, z)) {
+                best = i;
+                break;
+            }
+        }
+        return best == Integer.MAX_VALUE ? null : areas[best];
+    }
+    
+    private static int cell(double coordinate) {
+        return ((int) Math.floor(coordinate)) >> CELL_SHIFT;
+    }
+    
+    private static long key(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+    
+    private static class WorldBuilder {
+        private HashMap<Long, List<Integer>> cells = new HashMap<Long, List<Integer>>();
+        private List<Integer> large = new ArrayList<Integer>();
+        
+        private void add(int position, RestrictedArea area) {
+            int minX = cell(Math.min(area.getLocation1().getX(), area.getLocation2().getX()));
+            int maxX = cell(Math.max(area.getLocation1().getX(), area.getLocation2().getX()));
+            int minZ = cell(Math.min(area.getLocation1().getZ(), area.getLocation2().getZ()));
+            int maxZ = cell(Math.max(area.getLocation1().getZ(), area.getLocation2().getZ()));
+            if ((long) (maxX - minX + 1) * (maxZ - minZ + 1) > MAX_CELLS_PER_AREA) {
+                large.add(position);
+                return;
+            }
+            for (int cellX = minX; cellX <= maxX; cellX++) {
+                for (int cellZ = minZ; cellZ <= maxZ; cellZ++) {
+                    Long key = key(cellX, cellZ);
+                    List<Integer> cell = cells.get(key);
+                    if (cell == null) {
+                        cell = new ArrayList<Integer>();
+                        cells.put(key, cell);
+                    }
+                    cell.add(position);
+                }
+            }
+        }
+        
+        private WorldIndex build() {
+            int capacity = 2;
+            while (capacity < cells.size() * 2)
+                capacity <<= 1;
+            WorldIndex index = new WorldIndex(capacity, toArray(large));
+            for (Long key : cells.keySet()) {
+                index.put(key, toArray(cells.get(key)));
+            }
+            return index;
+        }
+        
+        private static int[] toArray(List<Integer> list) {
+            int[] array = new int[list.size()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = list.get(i);
+            return array;
+        }
+    }
+    
+    /**
+     * Open addressing table from grid cell to the areas overlapping it, in configuration order
+     */
+    private static class WorldIndex {
+        private long[] keys;
+        private int[][] values;
+        private int mask;
+        private int[] large;
+        
+        private WorldIndex(int capacity, int[] large) {
+            keys = new long[capacity];
+            values = new int[capacity][];
+            mask = capacity - 1;
+            this.large = large;
+        }
+        
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+        
+        private void put(long key, int[] areas) {
+            int slot = slot(key);
+            while (values[slot] != null)
+                slot = (slot + 1) & mask;
+            keys[slot] = key;
+            values[slot] = areas;
+        }
+        
+        private int[] getCell(int cellX, int cellZ) {
+            long key = key(cellX, cellZ);
+            int slot = slot(key);
+            int[] areas;
+            while ((areas = values[slot]) != null) {
+                if (keys[slot] == key)
+                    return areas;
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+    }
+}
@@ -30,6 +30,9 @@ public class Title {
     private String shortName = null;
     private ChatColor color = null;
     private int levelReq = 0;
+    // names rendered in the title colour, followed by white
+    private String coloredName = null;
+    private String coloredShortName = null;
     
     /**
      * Constructor
@@ -43,6 +46,8 @@ public class Title {
         this.color = color;
         this.levelReq = levelReq;
         this.shortName = shortName;
+        this.coloredName = color + name + ChatColor.WHITE;
+        this.coloredShortName = color + shortName + ChatColor.WHITE;
     }
     
     /**
@@ -76,4 +81,20 @@ public class Title {
     public String getShortName(){
         return shortName;
     }
+    
+    /**
+     * Function to get the long name of the title in its colour, followed by white
+     * @return the coloured long name of the title
+     */
+    public String getColoredName(){
+        return coloredName;
+    }
+    
+    /**
+     * Function to get the short name of the title in its colour, followed by white
+     * @return the coloured short name of the title
+     */
+    public String getColoredShortName(){
+        return coloredShortName;
+    }
 }
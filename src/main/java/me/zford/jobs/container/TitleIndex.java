@@ -0,0 +1,79 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.container;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lookup table from level to title
+ * 
+ * Titles are sorted by level requirement, keeping only the first configured title
+ * for each requirement, and looked up with a binary search.
+ */
+public class TitleIndex {
+    private int[] levels;
+    private Title[] titles;
+    
+    /**
+     * Builds the index
+     * @param list - titles in configuration order
+     */
+    public TitleIndex(List<Title> list) {
+        ArrayList<Title> sorted = new ArrayList<Title>(list);
+        // stable sort, so the first configured title wins ties
+        Collections.sort(sorted, new Comparator<Title>() {
+            @Override
+            public int compare(Title a, Title b) {
+                return a.getLevelReq() < b.getLevelReq() ? -1 : (a.getLevelReq() == b.getLevelReq() ? 0 : 1);
+            }
+        });
+        ArrayList<Title> unique = new ArrayList<Title>(sorted.size());
+        for (Title title : sorted) {
+            if (unique.isEmpty() || unique.get(unique.size() - 1).getLevelReq() != title.getLevelReq())
+                unique.add(title);
+        }
+        levels = new int[unique.size()];
+        titles = new Title[unique.size()];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = unique.get(i);
+            levels[i] = titles[i].getLevelReq();
+        }
+    }
+    
+    /**
+     * Function to return the title for a given level
+     * @param level - the level
+     * @return the title with the highest level requirement not above level, null if none
+     */
+    public Title get(int level) {
+        int low = 0;
+        int high = levels.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (levels[mid] <= level)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high < 0 ? null : titles[high];
+    }
+}
@@ -23,13 +23,22 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+/**
+ * A pooled database connection
+ * 
+ * A connection is only ever used by the thread that borrowed it from the
+ * {@link JobsConnectionPool}, so none of these methods need to be synchronized.
+ */
 public class JobsConnection {
     private Connection conn;
+    // last time this connection was validated or handed back to the pool
+    private volatile long lastUsed;
     public JobsConnection(Connection conn) {
         this.conn = conn;
+        this.lastUsed = System.currentTimeMillis();
     }
     
-    public synchronized boolean isClosed() {
+    public boolean isClosed() {
         try {
             return conn.isClosed();
         } catch(SQLException e) {
@@ -38,7 +47,7 @@ public class JobsConnection {
         }
     }
     
-    public synchronized boolean isValid(int timeout) throws SQLException {
+    public boolean isValid(int timeout) throws SQLException {
         try {
             return conn.isValid(timeout);
         } catch (AbstractMethodError e) {
@@ -46,15 +55,46 @@ public class JobsConnection {
         }
     }
     
-    public synchronized void closeConnection() throws SQLException {
+    public void closeConnection() throws SQLException {
         conn.close();
     }
     
-    public synchronized Statement createStatement() throws SQLException {
+    public Statement createStatement() throws SQLException {
         return conn.createStatement();
     }
     
-    public synchronized PreparedStatement prepareStatement(String sql) throws SQLException {
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
         return conn.prepareStatement(sql);
     }
+
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        conn.setAutoCommit(autoCommit);
+    }
+
+    public void commit() throws SQLException {
+        conn.commit();
+    }
+
+    public void rollback() {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Time this connection was last validated or returned to the pool
+     * @return time in milliseconds
+     */
+    public long getLastUsed() {
+        return lastUsed;
+    }
+    
+    /**
+     * Records that this connection is known to be good
+     */
+    public void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
 }
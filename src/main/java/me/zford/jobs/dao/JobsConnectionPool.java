@@ -22,41 +22,163 @@ import java.sql.Connection;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import me.zford.jobs.Jobs;
 
+/**
+ * Bounded database connection pool
+ * 
+ * Connections are borrowed with {@link #getConnection()} and must be handed back
+ * with {@link #returnConnection(JobsConnection)}.  Idle connections are only
+ * re-validated once they have been unused for longer than the validation interval.
+ */
 public class JobsConnectionPool {
-    private JobsConnection connection;
+    // idle connections are re-validated after this many milliseconds
+    private static final long VALIDATION_INTERVAL = 30000;
+    // maximum time to wait for a free connection
+    private static final long BORROW_TIMEOUT = 30000;
+    
+    private final LinkedBlockingQueue<JobsConnection> idle = new LinkedBlockingQueue<JobsConnection>();
+    private final Semaphore permits;
+    private final int size;
+    private volatile boolean closed = false;
     private String url;
     private String username;
     private String password;
-    public JobsConnectionPool(String driverName, String url, String username, String password) throws InstantiationException, IllegalAccessException, ClassNotFoundException, SQLException {
+    
+    // usage counters
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    
+    public JobsConnectionPool(String driverName, String url, String username, String password, int size) throws InstantiationException, IllegalAccessException, ClassNotFoundException, SQLException {
         Driver driver = (Driver) Class.forName(driverName, true, Jobs.getJobsClassloader()).newInstance();
         JobsDriver jDriver = new JobsDriver(driver);
         DriverManager.registerDriver(jDriver);
         this.url = url;
         this.username = username;
         this.password = password;
+        this.size = Math.max(1, size);
+        this.permits = new Semaphore(this.size, true);
     }
     
-    public synchronized JobsConnection getConnection() throws SQLException {
-        if (connection != null && (connection.isClosed() || !connection.isValid(1))) {
+    /**
+     * Borrows a connection from the pool, waiting if all connections are in use
+     * @return the connection
+     * @throws SQLException if no connection could be obtained
+     */
+    public JobsConnection getConnection() throws SQLException {
+        if (closed)
+            throw new SQLException("Connection pool is closed");
+        
+        long start = System.nanoTime();
+        if (!permits.tryAcquire()) {
+            waitCount.incrementAndGet();
+            boolean acquired;
             try {
-                connection.closeConnection();
-            } catch (SQLException e) {}
-            connection = null;
+                acquired = permits.tryAcquire(BORROW_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection");
+            }
+            if (!acquired)
+                throw new SQLException("Timed out waiting for a database connection");
         }
+        recordWait(System.nanoTime() - start);
         
-        if (connection == null) {
+        try {
+            JobsConnection connection;
+            while ((connection = idle.poll()) != null) {
+                if (isUsable(connection)) {
+                    borrowCount.incrementAndGet();
+                    activeCount.incrementAndGet();
+                    return connection;
+                }
+                discard(connection);
+            }
+            
             Connection conn = DriverManager.getConnection(url, username, password);
-            connection = new JobsConnection(conn);
+            createdCount.incrementAndGet();
+            borrowCount.incrementAndGet();
+            activeCount.incrementAndGet();
+            return new JobsConnection(conn);
+        } catch (SQLException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
         }
-        
-        return connection;
     }
     
-    public synchronized void closeConnection() {
-        if (connection != null) {
+    /**
+     * Hands a borrowed connection back to the pool
+     * @param connection - the connection
+     */
+    public void returnConnection(JobsConnection connection) {
+        activeCount.decrementAndGet();
+        if (closed || connection.isClosed()) {
+            discard(connection);
+        } else {
+            connection.touch();
+            idle.offer(connection);
+        }
+        permits.release();
+    }
+    
+    /**
+     * Checks a connection before it is handed out
+     * 
+     * Connections used recently are trusted, only stale ones cost a validation round trip.
+     * @param connection - the idle connection
+     * @return true if the connection can be used
+     */
+    private boolean isUsable(JobsConnection connection) {
+        if (connection.isClosed())
+            return false;
+        if (System.currentTimeMillis() - connection.getLastUsed() < VALIDATION_INTERVAL)
+            return true;
+        try {
+            if (!connection.isValid(1))
+                return false;
+        } catch (SQLException e) {
+            return false;
+        }
+        connection.touch();
+        return true;
+    }
+    
+    private void discard(JobsConnection connection) {
+        try {
+            connection.closeConnection();
+        } catch (SQLException e) {}
+    }
+    
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        long max;
+        do {
+            max = maxWaitNanos.get();
+            if (nanos <= max)
+                return;
+        } while (!maxWaitNanos.compareAndSet(max, nanos));
+    }
+    
+    /**
+     * Closes all idle connections, borrowed connections are closed when returned
+     */
+    public void closeConnection() {
+        closed = true;
+        JobsConnection connection;
+        while ((connection = idle.poll()) != null) {
             try {
                 connection.closeConnection();
             } catch (SQLException e) {
@@ -64,4 +186,68 @@ public class JobsConnectionPool {
             }
         }
     }
+    
+    /**
+     * Maximum number of open connections
+     * @return the pool size
+     */
+    public int getSize() {
+        return size;
+    }
+    
+    /**
+     * Number of connections currently borrowed
+     * @return active connections
+     */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+    
+    /**
+     * Number of open connections waiting to be borrowed
+     * @return idle connections
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+    
+    /**
+     * Total number of connections handed out
+     * @return borrow count
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+    
+    /**
+     * Number of borrows that had to wait for a free connection
+     * @return wait count
+     */
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+    
+    /**
+     * Total number of physical connections opened
+     * @return created count
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+    
+    /**
+     * Total time spent waiting for a free connection
+     * @return wait time in milliseconds
+     */
+    public long getTotalWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+    
+    /**
+     * Longest time spent waiting for a free connection
+     * @return wait time in milliseconds
+     */
+    public long getMaxWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
 }
@@ -22,12 +22,16 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import me.zford.jobs.Jobs;
 import me.zford.jobs.container.Job;
-import me.zford.jobs.container.JobProgression;
 import me.zford.jobs.container.JobsPlayer;
+import me.zford.jobs.container.JobsPlayerSnapshot;
 
 
 /**
@@ -42,10 +46,10 @@ public abstract class JobsDAO {
     private JobsConnectionPool pool;
     private String prefix;
     
-    public JobsDAO(String driverName, String url, String username, String password, String prefix) {
+    public JobsDAO(String driverName, String url, String username, String password, String prefix, int poolSize) {
         this.prefix = prefix;
         try {
-            pool = new JobsConnectionPool(driverName, url, username, password);
+            pool = new JobsConnectionPool(driverName, url, username, password, poolSize);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -64,7 +68,7 @@ public abstract class JobsDAO {
      * @param player - the player being searched for
      * @return list of all of the names of the jobs the players are part of.
      */
-    public synchronized List<JobsDAOData> getAllJobs(JobsPlayer player) {
+    public List<JobsDAOData> getAllJobs(JobsPlayer player) {
         ArrayList<JobsDAOData> jobs = new ArrayList<JobsDAOData>();
         JobsConnection conn = getConnection();
         if (conn == null)
@@ -80,6 +84,8 @@ public abstract class JobsDAO {
             prest.close();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            releaseConnection(conn);
         }
         return jobs;
     }
@@ -89,7 +95,7 @@ public abstract class JobsDAO {
      * @param player - player that wishes to join the job
      * @param job - job that the player wishes to join
      */
-    public synchronized void joinJob(JobsPlayer player, Job job) {
+    public void joinJob(JobsPlayer player, Job job) {
         String sql = "INSERT INTO `" + prefix + "jobs` (`username`, `experience`, `level`, `job`) VALUES (?, ?, ?, ?);";
         JobsConnection conn = getConnection();
         if (conn == null)
@@ -104,6 +110,8 @@ public abstract class JobsDAO {
             prest.close();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            releaseConnection(conn);
         }
     }
     
@@ -112,7 +120,7 @@ public abstract class JobsDAO {
      * @param player - player that wishes to quit the job
      * @param job - job that the player wishes to quit
      */
-    public synchronized void quitJob(JobsPlayer player, Job job) {
+    public void quitJob(JobsPlayer player, Job job) {
         JobsConnection conn = getConnection();
         if (conn == null)
             return;
@@ -125,31 +133,210 @@ public abstract class JobsDAO {
             prest.close();
         } catch(SQLException e) {
             e.printStackTrace();
-        }       
+        } finally {
+            releaseConnection(conn);
+        }
     }
     
     /**
      * Save player-job information
-     * @param jobInfo - the information getting saved
+     * @param snapshot - the information getting saved
+     * @return true if the rows were written, false otherwise
+     */
+    public boolean save(JobsPlayerSnapshot snapshot) {
+        return save(Collections.singletonList(snapshot));
+    }
+    
+    /**
+     * Save player-job information for many players at once
+     * 
+     * Every changed row is added to a single JDBC batch and committed in one transaction.
+     * @param snapshots - the information getting saved
+     * @return true if the batch was committed, false otherwise
      */
-    public synchronized void save(JobsPlayer player) {
+    public boolean save(Collection<JobsPlayerSnapshot> snapshots) {
+        boolean empty = true;
+        for (JobsPlayerSnapshot snapshot : snapshots) {
+            if (!snapshot.getJobs().isEmpty()) {
+                empty = false;
+                break;
+            }
+        }
+        // nothing changed since the last write
+        if (empty)
+            return true;
         String sql = "UPDATE `" + prefix + "jobs` SET `experience` = ?, `level` = ? WHERE `username` = ? AND `job` = ?;";
         JobsConnection conn = getConnection();
         if (conn == null)
-            return;
+            return false;
+        boolean success = false;
         try {
+            conn.setAutoCommit(false);
             PreparedStatement prest = conn.prepareStatement(sql);
-            for (JobProgression temp: player.getJobProgression()) {
-                prest.setInt(1, (int)temp.getExperience());
-                prest.setInt(2, temp.getLevel());
-                prest.setString(3, player.getName());
-                prest.setString(4, temp.getJob().getName());
-                prest.executeUpdate();
+            int rows = 0;
+            for (JobsPlayerSnapshot snapshot : snapshots) {
+                for (JobsDAOData temp: snapshot.getJobs()) {
+                    prest.setInt(1, (int)temp.getExperience());
+                    prest.setInt(2, temp.getLevel());
+                    prest.setString(3, snapshot.getName());
+                    prest.setString(4, temp.getJobName());
+                    prest.addBatch();
+                    rows++;
+                }
             }
+            if (rows > 0)
+                prest.executeBatch();
             prest.close();
+            conn.commit();
+            success = true;
         } catch (SQLException e) {
+            conn.rollback();
             e.printStackTrace();
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            releaseConnection(conn);
         }
+        return success;
+    }
+
+    /**
+     * Apply queued player-job row writes
+     *
+     * Deletes are run before inserts, and inserts before updates, all in one transaction.
+     * @param writes - the rows getting written
+     * @return true if the writes were committed, false otherwise
+     */
+    public boolean write(Collection<JobsWrite> writes) {
+        if (writes.isEmpty())
+            return true;
+        JobsConnection conn = getConnection();
+        if (conn == null)
+            return false;
+        boolean success = false;
+        try {
+            conn.setAutoCommit(false);
+            PreparedStatement delete = conn.prepareStatement("DELETE FROM `" + prefix + "jobs` WHERE `username` = ? AND `job` = ?;");
+            PreparedStatement insert = conn.prepareStatement("INSERT INTO `" + prefix + "jobs` (`username`, `experience`, `level`, `job`) VALUES (?, ?, ?, ?);");
+            PreparedStatement update = conn.prepareStatement("UPDATE `" + prefix + "jobs` SET `experience` = ?, `level` = ? WHERE `username` = ? AND `job` = ?;");
+            int deletes = 0;
+            int inserts = 0;
+            int updates = 0;
+            for (JobsWrite write : writes) {
+                if (write.isDelete()) {
+                    delete.setString(1, write.getPlayerName());
+                    delete.setString(2, write.getJobName());
+                    delete.addBatch();
+                    deletes++;
+                }
+                if (write.isInsert()) {
+                    insert.setString(1, write.getPlayerName());
+                    insert.setInt(2, write.getExperience());
+                    insert.setInt(3, write.getLevel());
+                    insert.setString(4, write.getJobName());
+                    insert.addBatch();
+                    inserts++;
+                } else if (write.isUpdate()) {
+                    update.setInt(1, write.getExperience());
+                    update.setInt(2, write.getLevel());
+                    update.setString(3, write.getPlayerName());
+                    update.setString(4, write.getJobName());
+                    update.addBatch();
+                    updates++;
+                }
+            }
+            if (deletes > 0)
+                delete.executeBatch();
+            if (inserts > 0)
+                insert.executeBatch();
+            if (updates > 0)
+                update.executeBatch();
+            delete.close();
+            insert.close();
+            update.close();
+            conn.commit();
+            success = true;
+        } catch (SQLException e) {
+            conn.rollback();
+            e.printStackTrace();
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            releaseConnection(conn);
+        }
+        return success;
+    }
+
+    /**
+     * Get the outstanding debt of every player
+     * @return the debt per player name, null if it could not be read
+     */
+    public Map<String, Double> getDebts() {
+        HashMap<String, Double> debts = new HashMap<String, Double>();
+        JobsConnection conn = getConnection();
+        if (conn == null)
+            return null;
+        try {
+            String sql = "SELECT `username`, `amount` FROM `" + prefix + "debt`;";
+            PreparedStatement prest = conn.prepareStatement(sql);
+            ResultSet res = prest.executeQuery();
+            while (res.next()) {
+                debts.put(res.getString(1), res.getDouble(2));
+            }
+            prest.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            debts = null;
+        } finally {
+            releaseConnection(conn);
+        }
+        return debts;
+    }
+    
+    /**
+     * Replace the stored debts
+     * @param debts - the debt per player name
+     * @return true if the debts were committed, false otherwise
+     */
+    public boolean saveDebts(Map<String, Double> debts) {
+        JobsConnection conn = getConnection();
+        if (conn == null)
+            return false;
+        boolean success = false;
+        try {
+            conn.setAutoCommit(false);
+            PreparedStatement delete = conn.prepareStatement("DELETE FROM `" + prefix + "debt`;");
+            delete.executeUpdate();
+            delete.close();
+            PreparedStatement insert = conn.prepareStatement("INSERT INTO `" + prefix + "debt` (`username`, `amount`) VALUES (?, ?);");
+            for (Map.Entry<String, Double> debt : debts.entrySet()) {
+                insert.setString(1, debt.getKey());
+                insert.setDouble(2, debt.getValue());
+                insert.addBatch();
+            }
+            if (!debts.isEmpty())
+                insert.executeBatch();
+            insert.close();
+            conn.commit();
+            success = true;
+        } catch (SQLException e) {
+            conn.rollback();
+            e.printStackTrace();
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            releaseConnection(conn);
+        }
+        return success;
     }
     
     /**
@@ -157,7 +344,7 @@ public abstract class JobsDAO {
      * @param job - the job
      * @return  the number of players that have a particular job
      */
-    public synchronized int getSlotsTaken(Job job) {
+    public int getSlotsTaken(Job job) {
         int slot = 0;
         JobsConnection conn = getConnection();
         if (conn == null)
@@ -173,12 +360,16 @@ public abstract class JobsDAO {
             prest.close();
         } catch(SQLException e) {
             e.printStackTrace();
+        } finally {
+            releaseConnection(conn);
         }
         return slot;
     }
     
     /**
-     * Get a database connection
+     * Borrow a database connection from the pool
+     * 
+     * Every connection obtained here must be handed back with releaseConnection
      * @return  JobsConnection object
      * @throws SQLException 
      */
@@ -191,10 +382,27 @@ public abstract class JobsDAO {
         }
     }
     
+    /**
+     * Return a borrowed database connection to the pool
+     * @param conn - the connection
+     */
+    protected void releaseConnection(JobsConnection conn) {
+        pool.returnConnection(conn);
+    }
+    
+    /**
+     * Gets the connection pool, for usage statistics
+     * @return the connection pool
+     */
+    public JobsConnectionPool getConnectionPool() {
+        return pool;
+    }
+    
     /**
      * Close all active database handles
      */
-    public synchronized void closeConnections() {
-        pool.closeConnection();
+    public void closeConnections() {
+        if (pool != null)
+            pool.closeConnection();
     }
 }
@@ -25,26 +25,30 @@ import java.sql.Statement;
 import me.zford.jobs.Jobs;
 
 public class JobsDAOH2 extends JobsDAO {
-    public JobsDAOH2() {
-        super("org.h2.Driver", "jdbc:h2:"+new File(Jobs.getDataFolder(), "jobs").getPath(), "sa", "sa", "");
+    public JobsDAOH2(int poolSize) {
+        super("org.h2.Driver", "jdbc:h2:"+new File(Jobs.getDataFolder(), "jobs").getPath(), "sa", "sa", "", poolSize);
         File dir = Jobs.getDataFolder();
         if (!dir.exists())
             dir.mkdirs();
         setUp();
     }
     
-    public synchronized void setUp(){
+    public void setUp(){
+        JobsConnection conn = getConnection();
+        if (conn == null) {
+            Jobs.getPluginLogger().severe("Could not initialize database!  Could not connect to H2!");
+            return;
+        }
         try {
-            JobsConnection conn = getConnection();
-            if (conn == null) {
-                Jobs.getPluginLogger().severe("Could not initialize database!  Could not connect to H2!");
-                return;
-            }
             Statement st = conn.createStatement();
             String table = "CREATE TABLE IF NOT EXISTS `" + getPrefix() + "jobs` (username varchar(20), experience INT, level INT, job varchar(20));";
             st.executeUpdate(table);
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS `" + getPrefix() + "debt` (username varchar(20), amount DOUBLE);");
+            st.close();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            releaseConnection(conn);
         }
     }
 }
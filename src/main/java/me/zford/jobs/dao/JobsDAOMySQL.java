@@ -25,23 +25,27 @@ import me.zford.jobs.Jobs;
 
 public class JobsDAOMySQL extends JobsDAO {
     
-    public JobsDAOMySQL(String url, String username, String password, String prefix) {
-        super("com.mysql.jdbc.Driver", url, username, password, prefix);
+    public JobsDAOMySQL(String url, String username, String password, String prefix, int poolSize) {
+        super("com.mysql.jdbc.Driver", url, username, password, prefix, poolSize);
         setUp();
     }
     
-    public synchronized void setUp(){
+    public void setUp(){
+        JobsConnection conn = getConnection();
+        if (conn == null) {
+            Jobs.getPluginLogger().severe("Could not initialize database!  Could not connect to MySQL!");
+            return;
+        }
         try {
-            JobsConnection conn = getConnection();
-            if (conn == null) {
-                Jobs.getPluginLogger().severe("Could not initialize database!  Could not connect to MySQL!");
-                return;
-            }
             Statement st = conn.createStatement();
             String table = "CREATE TABLE IF NOT EXISTS `" + getPrefix() + "jobs` (username varchar(20), experience integer, level integer, job varchar(20));";
             st.executeUpdate(table);
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS `" + getPrefix() + "debt` (username varchar(20), amount double);");
+            st.close();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            releaseConnection(conn);
         }
     }
 }
@@ -26,25 +26,29 @@ import me.zford.jobs.Jobs;
 
 public class JobsDAOSQLite extends JobsDAO {
     public JobsDAOSQLite() {
-        super("org.sqlite.JDBC", "jdbc:sqlite:"+new File(Jobs.getDataFolder(), "jobs.sqlite.db").getPath(), null, null, "");
+        super("org.sqlite.JDBC", "jdbc:sqlite:"+new File(Jobs.getDataFolder(), "jobs.sqlite.db").getPath(), null, null, "", 1);
         File dir = Jobs.getDataFolder();
         if (!dir.exists())
             dir.mkdirs();
         setUp();
     }
     
-    public synchronized void setUp(){
+    public void setUp(){
+        JobsConnection conn = getConnection();
+        if (conn == null) {
+            Jobs.getPluginLogger().severe("Could not initialize database!  Could not connect to SQLite!");
+            return;
+        }
         try {
-            JobsConnection conn = getConnection();
-            if (conn == null) {
-                Jobs.getPluginLogger().severe("Could not initialize database!  Could not connect to SQLite!");
-                return;
-            }
             Statement st = conn.createStatement();
             String table = "CREATE TABLE IF NOT EXISTS `" + getPrefix() + "jobs` (username varchar(20), experience INT, level INT, job varchar(20));";
             st.executeUpdate(table);
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS `" + getPrefix() + "debt` (username varchar(20), amount DOUBLE);");
+            st.close();
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            releaseConnection(conn);
         }
     }
 }
@@ -0,0 +1,85 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.dao;
+
+/**
+ * A single pending player-job row write
+ * 
+ * Operations are bit flags, so a replace is a delete followed by an insert.
+ */
+public class JobsWrite {
+    public static final int INSERT = 1;
+    public static final int DELETE = 2;
+    public static final int REPLACE = DELETE | INSERT;
+    public static final int UPDATE = 4;
+    
+    private int operation;
+    private String playername;
+    private String job;
+    private int experience;
+    private int level;
+    
+    /**
+     * Constructor
+     * @param operation - INSERT, DELETE, REPLACE or UPDATE
+     * @param playername - the player owning the row
+     * @param job - the name of the job
+     * @param experience - the experience to write
+     * @param level - the level to write
+     */
+    public JobsWrite(int operation, String playername, String job, int experience, int level) {
+        this.operation = operation;
+        this.playername = playername;
+        this.job = job;
+        this.experience = experience;
+        this.level = level;
+    }
+    
+    public int getOperation() {
+        return operation;
+    }
+    
+    public boolean isDelete() {
+        return (operation & DELETE) != 0;
+    }
+    
+    public boolean isInsert() {
+        return (operation & INSERT) != 0;
+    }
+    
+    public boolean isUpdate() {
+        return operation == UPDATE;
+    }
+    
+    public String getPlayerName() {
+        return playername;
+    }
+    
+    public String getJobName() {
+        return job;
+    }
+    
+    public int getExperience() {
+        return experience;
+    }
+    
+    public int getLevel() {
+        return level;
+    }
+}
@@ -0,0 +1,283 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.dao;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.zford.jobs.Jobs;
+import me.zford.jobs.container.Job;
+import me.zford.jobs.container.JobProgression;
+import me.zford.jobs.container.JobsPlayer;
+
+/**
+ * Write-behind queue for player-job rows
+ * 
+ * Mutations are queued and coalesced per (player, job) so that callers never wait on
+ * the database.  Row values are read from the player when the queue is flushed, so a
+ * queued row always persists the latest progression.
+ */
+public class JobsWriteQueue {
+    private final LinkedHashMap<String, PendingWrite> pending = new LinkedHashMap<String, PendingWrite>();
+    /*
+     * Held while any player-job rows are read for writing and written, by the queue
+     * and by player saves alike, so writes of the same row land in the order their
+     * values were read.
+     */
+    public final Object writeLock = new Object();
+    
+    /**
+     * Queue creation of a player-job row
+     * @param player - player that joined the job
+     * @param job - the job
+     */
+    public void joinJob(JobsPlayer player, Job job) {
+        queue(player, job.getName(), JobsWrite.INSERT, false);
+    }
+    
+    /**
+     * Queue removal of a player-job row
+     * @param player - player that left the job
+     * @param job - the job
+     */
+    public void quitJob(JobsPlayer player, Job job) {
+        queue(player, job.getName(), JobsWrite.DELETE, false);
+    }
+    
+    /**
+     * Queue an update of every job row of the player
+     * 
+     * The player is marked as saved once the rows are written.
+     * @param player - the player
+     */
+    public void save(JobsPlayer player) {
+        synchronized (player.saveLock) {
+            for (JobProgression prog : player.getJobProgression()) {
+                queue(player, prog.getJob().getName(), JobsWrite.UPDATE, true);
+            }
+        }
+    }
+    
+    private synchronized void queue(JobsPlayer player, String job, int operation, boolean save) {
+        Jobs.getPlayerManager().bumpWriteGeneration(player.getName());
+        String key = player.getName() + '\n' + job;
+        PendingWrite write = pending.get(key);
+        if (write == null) {
+            pending.put(key, new PendingWrite(player, job, operation, save));
+        } else {
+            write.operation = merge(write.operation, operation);
+            write.save |= save;
+            if (write.operation == 0)
+                pending.remove(key);
+        }
+        notifyAll();
+    }
+    
+    /**
+     * Combines two queued operations on the same row
+     * @param earlier - the operation queued first
+     * @param later - the operation queued second
+     * @return the combined operation, 0 if the row needs no write
+     */
+    private static int merge(int earlier, int later) {
+        switch (later) {
+        case JobsWrite.UPDATE:
+            // inserts write the current values anyway, deletes win
+            return earlier;
+        case JobsWrite.DELETE:
+            // row was never written
+            if (earlier == JobsWrite.INSERT)
+                return 0;
+            return JobsWrite.DELETE;
+        case JobsWrite.INSERT:
+            if (earlier == JobsWrite.INSERT)
+                return JobsWrite.INSERT;
+            return JobsWrite.REPLACE;
+        case JobsWrite.REPLACE:
+            if (earlier == JobsWrite.INSERT)
+                return JobsWrite.INSERT;
+            return JobsWrite.REPLACE;
+        }
+        return later;
+    }
+    
+    /**
+     * Checks if there are queued writes
+     * @return true if nothing is queued
+     */
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+    
+    /**
+     * Checks if there are queued writes for a player
+     * @param playername - the player
+     * @return true if rows of this player are waiting to be written
+     */
+    public synchronized boolean hasPending(String playername) {
+        for (PendingWrite write : pending.values()) {
+            if (write.player.getName().equals(playername))
+                return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Waits until writes are queued
+     * @throws InterruptedException
+     */
+    public synchronized void awaitWrites() throws InterruptedException {
+        while (pending.isEmpty()) {
+            wait();
+        }
+    }
+    
+    /**
+     * Writes all queued rows in a single transaction
+     * 
+     * Writes that fail, or throw, are queued again in front of anything queued in the meantime.
+     * @param dao - the data access object, null while it is being replaced
+     * @return false if the writes failed and were queued again
+     */
+    public boolean flush(JobsDAO dao) {
+        synchronized (writeLock) {
+            ArrayList<PendingWrite> writes;
+            synchronized (this) {
+                if (pending.isEmpty())
+                    return true;
+                if (dao == null)
+                    return false;
+                writes = new ArrayList<PendingWrite>(pending.values());
+                pending.clear();
+            }
+            
+            ArrayList<JobsWrite> rows = new ArrayList<JobsWrite>(writes.size());
+            ArrayList<PendingWrite> written = new ArrayList<PendingWrite>(writes.size());
+            boolean success = false;
+            try {
+                for (PendingWrite write : writes) {
+                    JobsWrite row = write.capture();
+                    if (row != null) {
+                        rows.add(row);
+                        written.add(write);
+                    }
+                }
+                success = dao.write(rows);
+            } finally {
+                if (!success)
+                    requeue(writes);
+            }
+            if (!success)
+                return false;
+            
+            // players saved by these writes, with the rows written for them
+            LinkedHashMap<JobsPlayer, List<JobsWrite>> saved = new LinkedHashMap<JobsPlayer, List<JobsWrite>>();
+            for (int i = 0; i < rows.size(); i++) {
+                PendingWrite write = written.get(i);
+                write.persisted(rows.get(i));
+                Jobs.getPlayerManager().bumpWriteGeneration(rows.get(i).getPlayerName());
+                if (!write.save)
+                    continue;
+                List<JobsWrite> playerRows = saved.get(write.player);
+                if (playerRows == null) {
+                    playerRows = new ArrayList<JobsWrite>();
+                    saved.put(write.player, playerRows);
+                }
+                playerRows.add(rows.get(i));
+            }
+            for (Map.Entry<JobsPlayer, List<JobsWrite>> entry : saved.entrySet()) {
+                entry.getKey().markWritten(entry.getValue());
+            }
+            return true;
+        }
+    }
+    
+    private synchronized void requeue(List<PendingWrite> writes) {
+        LinkedHashMap<String, PendingWrite> newer = new LinkedHashMap<String, PendingWrite>(pending);
+        pending.clear();
+        for (PendingWrite write : writes) {
+            pending.put(write.getKey(), write);
+        }
+        Iterator<PendingWrite> iter = newer.values().iterator();
+        while (iter.hasNext()) {
+            PendingWrite write = iter.next();
+            queue(write.player, write.job, write.operation, write.save);
+        }
+    }
+    
+    private static class PendingWrite {
+        private JobsPlayer player;
+        private String job;
+        private int operation;
+        // whether the write was queued by a save of the player
+        private boolean save;
+        
+        private PendingWrite(JobsPlayer player, String job, int operation, boolean save) {
+            this.player = player;
+            this.job = job;
+            this.operation = operation;
+            this.save = save;
+        }
+        
+        /**
+         * Records the written row values on the player, so saves skip them
+         * @param row - the row that was written
+         */
+        private void persisted(JobsWrite row) {
+            if (!row.isInsert() && !row.isUpdate())
+                return;
+            synchronized (player.saveLock) {
+                for (JobProgression prog : player.getJobProgression()) {
+                    if (prog.getJob().getName().equals(job)) {
+                        prog.setPersisted(row.getExperience(), row.getLevel());
+                        return;
+                    }
+                }
+            }
+        }
+        
+        private String getKey() {
+            return player.getName() + '\n' + job;
+        }
+        
+        /**
+         * Reads the current row values from the player
+         * @return the row to write, null if nothing needs to be written
+         */
+        private JobsWrite capture() {
+            if (operation == JobsWrite.DELETE)
+                return new JobsWrite(operation, player.getName(), job, 0, 0);
+            
+            synchronized (player.saveLock) {
+                for (JobProgression prog : player.getJobProgression()) {
+                    if (prog.getJob().getName().equals(job))
+                        return new JobsWrite(operation, player.getName(), job, (int) prog.getExperience(), prog.getLevel());
+                }
+            }
+            
+            // player no longer has this job
+            if (operation == JobsWrite.REPLACE)
+                return new JobsWrite(JobsWrite.DELETE, player.getName(), job, 0, 0);
+            return null;
+        }
+    }
+}
@@ -18,7 +18,10 @@
 
 package me.zford.jobs.economy;
 
-public class BlackholeEconomy implements Economy {
+import java.util.Collections;
+import java.util.Map;
+
+public class BlackholeEconomy implements BulkEconomy {
     @Override
     public boolean depositPlayer(String playerName, double money) {
         return true;
@@ -29,6 +32,16 @@ public class BlackholeEconomy implements Economy {
         return true;
     }
     
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+    
+    @Override
+    public Map<String, Double> depositAll(Map<String, Double> payments) {
+        return Collections.emptyMap();
+    }
+    
     @Override
     public String format(double money) {
         return String.format("$%.2f", money);
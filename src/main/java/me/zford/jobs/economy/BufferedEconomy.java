@@ -18,19 +18,32 @@
 
 package me.zford.jobs.economy;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import me.zford.jobs.Jobs;
+import me.zford.jobs.config.ConfigManager;
+import me.zford.jobs.config.JobsConfiguration;
 import me.zford.jobs.container.JobsPlayer;
 import me.zford.jobs.tasks.BufferedPaymentTask;
+import me.zford.jobs.tasks.PaymentDispatcher;
 
 public class BufferedEconomy {
+    /*
+     * Marks an accumulator that was drained by payAll. It is a NaN pattern
+     * no sum of payments produces, so pay() can tell it apart from a total.
+     */
+    private static final long RETIRED = 0x7ff8dead0000beefL;
+    // same for the fixed-point totals, far below any real sum
+    private static final long RETIRED_UNITS = Long.MIN_VALUE;
+    
     private Economy economy;
-    private LinkedBlockingQueue<BufferedPayment> payments = new LinkedBlockingQueue<BufferedPayment>();
-    private final Map<String, BufferedPayment> paymentCache = Collections.synchronizedMap(new HashMap<String, BufferedPayment>());
+    // running total per player, stored as the bits of a double
+    private final ConcurrentHashMap<String, AtomicLong> accounts = new ConcurrentHashMap<String, AtomicLong>();
+    // running total per player in fractions of minor units, used in fixed-point money mode
+    private final ConcurrentHashMap<String, UnitTotal> unitAccounts = new ConcurrentHashMap<String, UnitTotal>();
     
     public BufferedEconomy (Economy economy) {
         this.economy = economy;
@@ -41,9 +54,7 @@ public class BufferedEconomy {
      * @param amount - amount to be paid
      */
     public void pay(JobsPlayer player, double amount) {
-        if (amount == 0)
-            return;
-        pay(new BufferedPayment(player.getName(), amount));
+        pay(player.getName(), amount);
     }
     
     /**
@@ -51,7 +62,102 @@ public class BufferedEconomy {
      * @param payment - payment to be paid
      */
     public void pay(BufferedPayment payment) {
-        payments.add(payment);
+        pay(payment.getPlayerName(), payment.getAmount());
+    }
+    
+    /**
+     * Add payment to player's payment buffer
+     * 
+     * The amount is added in place to the player's running total, nothing is allocated
+     * unless this is the first payment of the player since the last payout.
+     * @param playername - player to be paid
+     * @param amount - amount to be paid
+     */
+    public void pay(String playername, double amount) {
+        if (amount == 0)
+            return;
+        JobsConfiguration config = ConfigManager.getJobsConfiguration();
+        if (config.isFixedPointMoney()) {
+            payFixed(playername, amount, config.getMoneyFactor());
+            return;
+        }
+        while (true) {
+            AtomicLong total = accounts.get(playername);
+            if (total == null) {
+                AtomicLong created = new AtomicLong(Double.doubleToRawLongBits(amount));
+                total = accounts.putIfAbsent(playername, created);
+                if (total == null)
+                    return;
+            }
+            long bits = total.get();
+            if (bits == RETIRED) {
+                // drained by payAll, start a new total
+                accounts.remove(playername, total);
+                continue;
+            }
+            long sum = Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + amount);
+            if (total.compareAndSet(bits, sum))
+                return;
+        }
+    }
+    
+    /**
+     * Add payment to player's fixed-point running total
+     * 
+     * Payments are kept at a finer scale than money-scale and only rounded on payout,
+     * so income smaller than a minor unit still adds up.
+     * @param playername - player to be paid
+     * @param amount - amount to be paid
+     * @param factor - minor units in one unit of money
+     */
+    private void payFixed(String playername, double amount, long factor) {
+        while (true) {
+            UnitTotal total = unitAccounts.get(playername);
+            if (total == null) {
+                UnitTotal created = new UnitTotal(factor);
+                total = unitAccounts.putIfAbsent(playername, created);
+                if (total == null)
+                    total = created;
+            }
+            long current = total.get();
+            if (current == RETIRED_UNITS) {
+                // drained by payAll, start a new total
+                unitAccounts.remove(playername, total);
+                continue;
+            }
+            // a total keeps the scale it was created with, even across a reload
+            if (total.compareAndSet(current, current + total.toFine(amount)))
+                return;
+        }
+    }
+    
+    /**
+     * Takes the whole minor units of a fixed-point running total
+     * 
+     * The fraction of a minor unit left after rounding stays in the total for the next payout.
+     * @param playername - the player
+     * @param total - the player's running total
+     * @return the amount to pay
+     */
+    private double drainFixed(String playername, UnitTotal total) {
+        while (true) {
+            long fine = total.get();
+            if (fine == RETIRED_UNITS)
+                return 0;
+            long minor = total.toMinor(fine);
+            long rest = fine - minor * total.step;
+            if (rest == 0) {
+                if (total.compareAndSet(fine, RETIRED_UNITS)) {
+                    // a payment may already have replaced the retired total
+                    unitAccounts.remove(playername, total);
+                    return minor / (double) total.factor;
+                }
+            } else if (minor == 0) {
+                return 0;
+            } else if (total.compareAndSet(fine, rest)) {
+                return minor / (double) total.factor;
+            }
+        }
     }
     
     public String format(double money) {
@@ -62,28 +168,120 @@ public class BufferedEconomy {
      * Payout all players the amount they are going to be paid
      */
     public void payAll() {
-        if (payments.isEmpty())
+        if (accounts.isEmpty() && unitAccounts.isEmpty() && Jobs.getDebtLedger().getDebtorCount() == 0)
             return;
         
-        synchronized (paymentCache) {
-            // combine all payments using paymentCache
-            while (!payments.isEmpty()) {
-                BufferedPayment payment = payments.remove();
-                if (paymentCache.containsKey(payment.getPlayerName())) {
-                    BufferedPayment existing = paymentCache.get(payment.getPlayerName());
-                    existing.setAmount(existing.getAmount() + payment.getAmount());
-                } else {
-                    paymentCache.put(payment.getPlayerName(), payment);
-                }
+        // thread-safe economies are paid right here, deposits in one batch
+        boolean direct = economy instanceof BulkEconomy && ((BulkEconomy) economy).isThreadSafe();
+        HashMap<String, Double> deposits = null;
+        
+        // Queue all other payments, the dispatcher pays them out within its tick budget
+        PaymentDispatcher dispatcher = Jobs.getPaymentDispatcher();
+        DebtLedger ledger = Jobs.getDebtLedger();
+        for (Map.Entry<String, UnitTotal> entry : unitAccounts.entrySet()) {
+            double amount = drainFixed(entry.getKey(), entry.getValue());
+            if (amount != 0)
+                deposits = payOut(entry.getKey(), amount, direct, deposits, dispatcher, ledger);
+        }
+        for (Map.Entry<String, AtomicLong> entry : accounts.entrySet()) {
+            long bits = entry.getValue().getAndSet(RETIRED);
+            // a payment may already have replaced the retired total
+            accounts.remove(entry.getKey(), entry.getValue());
+            if (bits == RETIRED)
+                continue;
+            double amount = Double.longBitsToDouble(bits);
+            if (amount != 0)
+                deposits = payOut(entry.getKey(), amount, direct, deposits, dispatcher, ledger);
+        }
+        
+        // retry withdrawing debts that are due
+        for (Map.Entry<String, Double> entry : ledger.takeDue().entrySet()) {
+            BufferedPaymentTask task = new BufferedPaymentTask(this, economy, entry.getKey(), -entry.getValue(), true);
+            if (direct)
+                task.run();
+            else
+                dispatcher.queue(task);
+        }
+        
+        if (deposits != null) {
+            Map<String, Double> failed = ((BulkEconomy) economy).depositAll(deposits);
+            // retried with the next batch
+            for (Map.Entry<String, Double> entry : failed.entrySet()) {
+                pay(entry.getKey(), entry.getValue());
             }
-            // Schedule all payments
-            int i = 0;
-            for (BufferedPayment payment : paymentCache.values()) {
-                i++;
-                Jobs.getScheduler().scheduleTask(new BufferedPaymentTask(this, economy, payment), i);
+        }
+    }
+    
+    /**
+     * Pays out the drained total of one player
+     * @param playername - the player
+     * @param total - the drained total
+     * @param direct - whether the economy is called from this thread
+     * @param deposits - deposits collected for one batch, may be null
+     * @param dispatcher - the payment dispatcher
+     * @param ledger - the debt ledger
+     * @return the deposits collected for one batch, null if there are none
+     */
+    private HashMap<String, Double> payOut(String playername, double total, boolean direct,
+            HashMap<String, Double> deposits, PaymentDispatcher dispatcher, DebtLedger ledger) {
+        // outstanding debt is paid off first
+        double amount = ledger.net(playername, total);
+        if (amount == 0)
+            return deposits;
+        if (direct && amount > 0) {
+            if (deposits == null)
+                deposits = new HashMap<String, Double>();
+            deposits.put(playername, amount);
+        } else if (direct) {
+            new BufferedPaymentTask(this, economy, playername, amount, false).run();
+        } else {
+            dispatcher.queue(new BufferedPaymentTask(this, economy, playername, amount, false));
+        }
+        return deposits;
+    }
+    
+    /**
+     * Fixed-point running total, in units of 1 / (money factor * step)
+     */
+    private static class UnitTotal extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        // fractions kept per minor unit, fewer at a high money-scale to leave room for the total
+        private static final long MAX_STEP = 1000000L;
+        private static final long MAX_RESOLUTION = 1000000000000L;
+        
+        // minor units in one unit of money
+        private final long factor;
+        private final long step;
+        
+        private UnitTotal(long factor) {
+            this.factor = factor;
+            this.step = Math.min(MAX_STEP, MAX_RESOLUTION / factor);
+        }
+        
+        /**
+         * Converts money to the units of this total, rounding half to even
+         * @param amount - the amount of money
+         * @return the amount in units of this total
+         */
+        private long toFine(double amount) {
+            return (long) Math.rint(amount * (double) (factor * step));
+        }
+        
+        /**
+         * Rounds units of this total to whole minor units, half to even
+         * @param fine - the amount in units of this total
+         * @return the amount in minor units
+         */
+        private long toMinor(long fine) {
+            long minor = fine / step;
+            long rest = fine % step;
+            if (rest < 0) {
+                minor--;
+                rest += step;
             }
-            // empty payment cache
-            paymentCache.clear();
+            if (rest * 2 > step || (rest * 2 == step && (minor & 1) != 0))
+                minor++;
+            return minor;
         }
     }
 }
@@ -0,0 +1,41 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.economy;
+
+import java.util.Map;
+
+/**
+ * Economy that can pay many players at once
+ */
+public interface BulkEconomy extends Economy {
+    /**
+     * Whether this economy may be called from any thread
+     * 
+     * Thread-safe economies are paid from the payment thread instead of the main thread.
+     * @return true if thread-safe
+     */
+    public boolean isThreadSafe();
+    
+    /**
+     * Deposits money to many players
+     * @param payments - amount to deposit per player name
+     * @return the payments that could not be deposited
+     */
+    public Map<String, Double> depositAll(Map<String, Double> payments);
+}
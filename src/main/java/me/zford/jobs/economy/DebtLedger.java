@@ -0,0 +1,255 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.economy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import me.zford.jobs.Jobs;
+import me.zford.jobs.config.ConfigManager;
+import me.zford.jobs.dao.JobsDAO;
+
+/**
+ * Money owed by players whose withdrawals failed
+ * 
+ * Income is netted against the debt before any economy call is made. Withdrawal of
+ * the debt is retried every debt-retry-interval, at most debt-max-retries times, after
+ * which the debt is only paid off by income.
+ */
+public class DebtLedger {
+    private final HashMap<String, Debt> debts = new HashMap<String, Debt>();
+    // whether the ledger changed since it was last written
+    private boolean dirty = false;
+    // whether the ledger was read from the database
+    private boolean loaded = false;
+    
+    /**
+     * Adds the debts stored in the database to the ledger
+     * 
+     * Debts recorded before the ledger could be read are kept. Until it is loaded,
+     * the ledger is never saved, so stored debts cannot be overwritten.
+     * @param dao - the data access object
+     * @return true if the stored debts were read
+     */
+    public synchronized boolean load(JobsDAO dao) {
+        Map<String, Double> stored = dao.getDebts();
+        if (stored == null) {
+            Jobs.getPluginLogger().warning("无法读取欠款记录, 将在下次保存时重试");
+            return false;
+        }
+        dirty = !debts.isEmpty();
+        long next = System.currentTimeMillis() + getRetryInterval();
+        for (Map.Entry<String, Double> entry : stored.entrySet()) {
+            Debt debt = debts.get(entry.getKey());
+            if (debt == null)
+                debts.put(entry.getKey(), new Debt(entry.getValue(), next));
+            else
+                debt.amount += entry.getValue();
+        }
+        loaded = true;
+        if (!debts.isEmpty())
+            Jobs.getPluginLogger().info(getDebtorCount()+" 位玩家欠款, 共 "+getTotalDebt());
+        return true;
+    }
+    
+    /**
+     * Checks if the ledger was read from the database
+     * 
+     * Once loaded, the ledger in memory is authoritative, since retried withdrawals
+     * may still be settling against it.
+     * @return true if the ledger was loaded
+     */
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * Makes the next save write the whole ledger, e.g. after the database changed
+     */
+    public synchronized void markDirty() {
+        dirty = true;
+    }
+    
+    /**
+     * Writes the ledger to the database if it changed
+     * @param dao - the data access object
+     */
+    public void save(JobsDAO dao) {
+        HashMap<String, Double> amounts;
+        synchronized (this) {
+            // the stored debts are replaced, so they have to be read first
+            if (!loaded && !load(dao))
+                return;
+            if (!dirty)
+                return;
+            amounts = new HashMap<String, Double>(debts.size());
+            for (Map.Entry<String, Debt> entry : debts.entrySet()) {
+                amounts.put(entry.getKey(), entry.getValue().amount);
+            }
+            dirty = false;
+        }
+        if (!dao.saveDebts(amounts)) {
+            synchronized (this) {
+                dirty = true;
+            }
+        }
+    }
+    
+    /**
+     * Pays off debt from income
+     * @param playername - the player
+     * @param income - the income of the player
+     * @return the income left after paying off debt
+     */
+    public synchronized double net(String playername, double income) {
+        if (income <= 0)
+            return income;
+        Debt debt = debts.get(playername);
+        if (debt == null)
+            return income;
+        dirty = true;
+        if (debt.amount > income) {
+            debt.amount -= income;
+            return 0;
+        }
+        debts.remove(playername);
+        return income - debt.amount;
+    }
+    
+    /**
+     * Records a withdrawal that failed
+     * @param playername - the player
+     * @param amount - the amount that could not be withdrawn
+     */
+    public synchronized void addDebt(String playername, double amount) {
+        if (amount <= 0)
+            return;
+        Debt debt = debts.get(playername);
+        if (debt == null) {
+            debts.put(playername, new Debt(amount, System.currentTimeMillis() + getRetryInterval()));
+        } else {
+            debt.amount += amount;
+        }
+        dirty = true;
+    }
+    
+    /**
+     * Gets the debts whose withdrawal should be retried now
+     * 
+     * Each returned debt must be reported back with settle or retryFailed.
+     * @return the amount to withdraw per player
+     */
+    public synchronized Map<String, Double> takeDue() {
+        HashMap<String, Double> due = new HashMap<String, Double>();
+        if (debts.isEmpty())
+            return due;
+        long now = System.currentTimeMillis();
+        int maxRetries = ConfigManager.getJobsConfiguration().getDebtMaxRetries();
+        for (Map.Entry<String, Debt> entry : debts.entrySet()) {
+            Debt debt = entry.getValue();
+            if (debt.attempts >= maxRetries || debt.nextAttempt > now)
+                continue;
+            // not retried again until this attempt is reported back
+            debt.nextAttempt = Long.MAX_VALUE;
+            due.put(entry.getKey(), debt.amount);
+        }
+        return due;
+    }
+    
+    /**
+     * Records that a retried withdrawal succeeded
+     * @param playername - the player
+     * @param withdrawn - the amount withdrawn
+     * @return the amount withdrawn beyond the debt, to be given back
+     */
+    public synchronized double settle(String playername, double withdrawn) {
+        Debt debt = debts.get(playername);
+        if (debt == null)
+            return withdrawn;
+        dirty = true;
+        debt.amount -= withdrawn;
+        if (debt.amount <= 0) {
+            debts.remove(playername);
+            return -debt.amount;
+        }
+        // debt added while the withdrawal was in flight
+        debt.attempts = 0;
+        debt.nextAttempt = System.currentTimeMillis() + getRetryInterval();
+        return 0;
+    }
+    
+    /**
+     * Records that a retried withdrawal failed
+     * @param playername - the player
+     */
+    public synchronized void retryFailed(String playername) {
+        Debt debt = debts.get(playername);
+        if (debt == null)
+            return;
+        debt.attempts++;
+        debt.nextAttempt = System.currentTimeMillis() + getRetryInterval();
+    }
+    
+    /**
+     * Gets the outstanding debt of a player
+     * @param playername - the player
+     * @return the debt, 0 if none
+     */
+    public synchronized double getDebt(String playername) {
+        Debt debt = debts.get(playername);
+        return debt == null ? 0 : debt.amount;
+    }
+    
+    /**
+     * Gets the outstanding debt of all players
+     * @return the total debt
+     */
+    public synchronized double getTotalDebt() {
+        double total = 0;
+        for (Debt debt : debts.values()) {
+            total += debt.amount;
+        }
+        return total;
+    }
+    
+    /**
+     * Gets the number of players in debt
+     * @return the number of players
+     */
+    public synchronized int getDebtorCount() {
+        return debts.size();
+    }
+    
+    private static long getRetryInterval() {
+        return ConfigManager.getJobsConfiguration().getDebtRetryInterval() * 1000L;
+    }
+    
+    private static class Debt {
+        private double amount;
+        // withdrawal retries that failed
+        private int attempts = 0;
+        // time of the next withdrawal retry, in milliseconds
+        private long nextAttempt;
+        
+        private Debt(double amount, long nextAttempt) {
+            this.amount = amount;
+            this.nextAttempt = nextAttempt;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.resources.jfep;
+
+/**
+ * An expression tree flattened to a postfix program
+ * 
+ * Variables are resolved to slots when compiled, and evaluated from an array of
+ * slot values.  Evaluation keeps no state in the expression, so one compiled
+ * expression can be evaluated from several threads at once.
+ * @see Parser#compile(String...)
+ */
+public class CompiledExpression {
+    private static final int CONSTANT = 0;
+    private static final int VARIABLE = 1;
+    private static final int OPERATOR = 2;
+    private static final int FUNCTION = 3;
+    
+    private String[] slots;
+    private int[] instructions;
+    // slot index, operator symbol or function index of each instruction
+    private int[] operands;
+    private double[] constants;
+    private int length;
+    private int stackSize;
+    
+    /**
+     * Compiles an expression tree
+     * @param root root node of the tree
+     * @param slots variable names, in slot order
+     * @param error if true, variables without a slot raise an exception. If false,
+     * they are considered as zero.
+     * @throws EvaluationException if a variable has no slot and error is true
+     */
+    public CompiledExpression(ExpressionNode root, String[] slots, boolean error) throws EvaluationException {
+        this.slots = slots.clone();
+        int size = root.count();
+        instructions = new int[size];
+        operands = new int[size];
+        constants = new double[size];
+        emit(root, 0, error);
+    }
+    
+    /**
+     * Appends the program of a subtree
+     * @param node root of the subtree
+     * @param depth stack depth before the subtree is evaluated
+     * @param error if true, variables without a slot raise an exception
+     */
+    private void emit(ExpressionNode node, int depth, boolean error) {
+        ExpressionNode[] children = node.getChildrenNodes();
+        for (int i = 0; i < children.length; i++)
+            emit(children[i], depth + i, error);
+        
+        switch (node.getType()) {
+        case ExpressionNode.CONSTANT_NODE:
+            instructions[length] = CONSTANT;
+            constants[length] = node.getValue();
+            break;
+        case ExpressionNode.VARIABLE_NODE:
+            int slot = getSlot(node.getSubtype());
+            if (slot >= 0) {
+                instructions[length] = VARIABLE;
+                operands[length] = slot;
+            } else if (error) {
+                throw new EvaluationException("Variable '" + node.getSubtype() + "' was not initialized.");
+            } else {
+                instructions[length] = CONSTANT;
+                constants[length] = 0.0;
+            }
+            break;
+        case ExpressionNode.OPERATOR_NODE:
+            instructions[length] = OPERATOR;
+            operands[length] = node.getSubtype().charAt(0);
+            break;
+        case ExpressionNode.FUNCTION_NODE:
+            instructions[length] = FUNCTION;
+            operands[length] = ((FunctionNode) node).function;
+            break;
+        }
+        length++;
+        stackSize = Math.max(stackSize, depth + 1);
+    }
+    
+    /**
+     * Returns the slot of a variable
+     * @param name name of the variable (case sensitive)
+     * @return slot index, -1 if the variable has no slot
+     */
+    public int getSlot(String name) {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Evaluates the expression
+     * @param values variable values, indexed by slot
+     * @return value of expression
+     */
+    public double evaluate(double[] values) {
+        double[] stack = new double[stackSize];
+        int top = -1;
+        for (int pc = 0; pc < length; pc++) {
+            switch (instructions[pc]) {
+            case CONSTANT:
+                stack[++top] = constants[pc];
+                break;
+            case VARIABLE:
+                stack[++top] = values[operands[pc]];
+                break;
+            case OPERATOR:
+                top--;
+                stack[top] = OperatorNode.evaluate((char) operands[pc], stack[top], stack[top + 1]);
+                break;
+            case FUNCTION:
+                stack[top] = FunctionNode.evaluate(operands[pc], stack[top]);
+                break;
+            }
+        }
+        return stack[0];
+    }
+}
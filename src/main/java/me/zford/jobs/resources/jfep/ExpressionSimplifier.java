@@ -0,0 +1,128 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.resources.jfep;
+
+/**
+ * Optimisation pass over expression trees
+ * 
+ * Folds constant subtrees, removes identity operations and expands small integer
+ * powers of a variable or constant into multiplications.  The input tree is not
+ * modified.
+ */
+public class ExpressionSimplifier {
+    // highest exponent expanded into multiplications
+    private static final int MAX_EXPANDED_POWER = 4;
+    private static final int NEGATE = 0;
+    private static final int RAND = indexOf("rand");
+    
+    private static int indexOf(String function) {
+        for (int i = 0; i < FunctionNode.FUNCTIONS.length; i++) {
+            if (FunctionNode.FUNCTIONS[i].equals(function))
+                return i;
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns a simplified copy of a tree
+     * @param node root of the tree
+     * @return root of the simplified tree
+     */
+    public static ExpressionNode simplify(ExpressionNode node) {
+        switch (node.getType()) {
+        case ExpressionNode.OPERATOR_NODE:
+            return simplifyOperator((OperatorNode) node);
+        case ExpressionNode.FUNCTION_NODE:
+            return simplifyFunction((FunctionNode) node);
+        }
+        return (ExpressionNode) node.clone();
+    }
+    
+    private static ExpressionNode simplifyOperator(OperatorNode node) {
+        ExpressionNode left = simplify(node.left);
+        ExpressionNode right = simplify(node.right);
+        char operation = node.operation;
+        if (isConstant(left) && isConstant(right))
+            return new ConstantNode(OperatorNode.evaluate(operation, left.getValue(), right.getValue()));
+        
+        switch (operation) {
+        case '+':
+            if (isConstant(right, 0.0))
+                return left;
+            if (isConstant(left, 0.0))
+                return right;
+            break;
+        case '-':
+            if (isConstant(right, 0.0))
+                return left;
+            if (isConstant(left, 0.0))
+                return new FunctionNode(right, NEGATE);
+            break;
+        case '*':
+            if (isConstant(right, 1.0))
+                return left;
+            if (isConstant(left, 1.0))
+                return right;
+            break;
+        case '/':
+            if (isConstant(right, 1.0))
+                return left;
+            break;
+        case '^':
+            if (isConstant(right, 0.0))
+                return new ConstantNode(1.0);
+            if (isConstant(right, 1.0))
+                return left;
+            if (isLeaf(left) && isConstant(right)) {
+                double exponent = right.getValue();
+                if (exponent == Math.floor(exponent) && exponent >= 2 && exponent <= MAX_EXPANDED_POWER) {
+                    ExpressionNode product = left;
+                    for (int i = 1; i < (int) exponent; i++)
+                        product = new OperatorNode(product, (ExpressionNode) left.clone(), '*');
+                    return product;
+                }
+            }
+            break;
+        }
+        return new OperatorNode(left, right, operation);
+    }
+    
+    private static ExpressionNode simplifyFunction(FunctionNode node) {
+        ExpressionNode child = simplify(node.child);
+        if (node.function != RAND && isConstant(child))
+            return new ConstantNode(FunctionNode.evaluate(node.function, child.getValue()));
+        // -(-x)
+        if (node.function == NEGATE && child.getType() == ExpressionNode.FUNCTION_NODE
+                && ((FunctionNode) child).function == NEGATE)
+            return ((FunctionNode) child).child;
+        return new FunctionNode(child, node.function);
+    }
+    
+    private static boolean isConstant(ExpressionNode node) {
+        return node.getType() == ExpressionNode.CONSTANT_NODE;
+    }
+    
+    private static boolean isConstant(ExpressionNode node, double value) {
+        return isConstant(node) && node.getValue() == value;
+    }
+    
+    private static boolean isLeaf(ExpressionNode node) {
+        return node.getType() == ExpressionNode.CONSTANT_NODE || node.getType() == ExpressionNode.VARIABLE_NODE;
+    }
+}
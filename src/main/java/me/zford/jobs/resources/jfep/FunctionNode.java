@@ -102,31 +102,42 @@ public class FunctionNode implements ExpressionNode {
      * @see jmt.engine.math.parser.ExpressionNode#getValue()
      */
     public double getValue() {
+        return evaluate(function, child.getValue());
+    }
+    
+    /**
+     * Applies a function
+     * @param function index of the function in <code>FUNCTIONS</code> array
+     * @param value argument of the function
+     * @return result of the function
+     * @see FunctionNode#FUNCTIONS
+     */
+    public static double evaluate(int function, double value) {
         switch (function) {
-            case 0: return - child.getValue();
-            case 1: return Math.sin(child.getValue());
-            case 2: return Math.cos(child.getValue());
-            case 3: return Math.tan(child.getValue());
-            case 4: return Math.asin(child.getValue());
-            case 5: return Math.acos(child.getValue());
-            case 6: return Math.atan(child.getValue());
-            case 7: return Sfun.sinh(child.getValue());
-            case 8: return Sfun.cosh(child.getValue());
-            case 9: return Sfun.tanh(child.getValue());
-            case 10: return Sfun.asinh(child.getValue());
-            case 11: return Sfun.acosh(child.getValue());
-            case 12: return Sfun.atanh(child.getValue());
-            case 13: return Math.log(child.getValue());
-            case 14: return Math.log(child.getValue()) * 0.43429448190325182765;
-            case 15: return Math.abs(child.getValue());
-            case 16: return Math.random() * child.getValue();
-            case 17: return Math.sqrt(child.getValue());
-            case 18: return Sfun.erf(child.getValue());
-            case 19: return Sfun.erfc(child.getValue());
-            case 20: return Sfun.gamma(child.getValue());
-            case 21: return Math.exp(child.getValue());
-            case 22: return Sfun.cot(child.getValue());
-            case 23: return Math.log(child.getValue()) * 1.442695040888963407360;
+            case 0: return - value;
+            case 1: return Math.sin(value);
+            case 2: return Math.cos(value);
+            case 3: return Math.tan(value);
+            case 4: return Math.asin(value);
+            case 5: return Math.acos(value);
+            case 6: return Math.atan(value);
+            case 7: return Sfun.sinh(value);
+            case 8: return Sfun.cosh(value);
+            case 9: return Sfun.tanh(value);
+            case 10: return Sfun.asinh(value);
+            case 11: return Sfun.acosh(value);
+            case 12: return Sfun.atanh(value);
+            case 13: return Math.log(value);
+            case 14: return Math.log(value) * 0.43429448190325182765;
+            case 15: return Math.abs(value);
+            case 16: return Math.random() * value;
+            case 17: return Math.sqrt(value);
+            case 18: return Sfun.erf(value);
+            case 19: return Sfun.erfc(value);
+            case 20: return Sfun.gamma(value);
+            case 21: return Math.exp(value);
+            case 22: return Sfun.cot(value);
+            case 23: return Math.log(value) * 1.442695040888963407360;
         }
         // This is never reached
         return 0;
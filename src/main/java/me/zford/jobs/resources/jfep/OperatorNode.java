@@ -82,13 +82,25 @@ public class OperatorNode implements ExpressionNode {
      * @see jmt.engine.math.parser.ExpressionNode#getValue()
      */
     public double getValue() {
+        return evaluate(operation, left.getValue(), right.getValue());
+    }
+    
+    /**
+     * Applies an operation
+     * @param operation operation to be performed
+     * @param left value of the left operand
+     * @param right value of the right operand
+     * @return result of the operation
+     * @see OperatorNode#OPERATIONS
+     */
+    public static double evaluate(char operation, double left, double right) {
         switch (operation) {
-            case '+': return left.getValue() + right.getValue();
-            case '-': return left.getValue() - right.getValue();
-            case '*': return left.getValue() * right.getValue();
-            case '/': return left.getValue() / right.getValue();
-            case '%': return left.getValue() % right.getValue();
-            case '^': return Math.pow(left.getValue(), right.getValue());
+            case '+': return left + right;
+            case '-': return left - right;
+            case '*': return left * right;
+            case '/': return left / right;
+            case '%': return left % right;
+            case '^': return Math.pow(left, right);
         }
         // Never reached
         return 0;
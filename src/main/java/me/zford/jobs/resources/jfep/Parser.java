@@ -443,6 +443,30 @@ public class Parser {
         return root.getValue();
     }
     
+    /**
+     * Simplifies the parsed expression tree, folding constant subexpressions
+     * @throws ParseError if parsed input string was malformed
+     * @see ExpressionSimplifier
+     */
+    public void optimize() throws ParseError {
+        getTree();
+        root = ExpressionSimplifier.simplify(root);
+    }
+    
+    /**
+     * Compiles the expression to a reentrant program
+     * @param slots names of the variables, in the order their values are passed to
+     * {@link CompiledExpression#evaluate(double[])}
+     * @return the compiled expression
+     * @throws ParseError if parsed input string was malformed
+     * @throws EvaluationException if a variable is not in slots and parser was 
+     * created with <code>error = true</code>
+     */
+    public CompiledExpression compile(String... slots) throws ParseError, EvaluationException {
+        getTree();
+        return new CompiledExpression(root, slots, error);
+    }
+    
     /**
      * Returns a string rappresentation of parsed expression with the right parentesis
      * @return a string rappresentation of parsed expression with the right parentesis
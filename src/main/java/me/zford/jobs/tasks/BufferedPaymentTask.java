@@ -18,26 +18,55 @@
 
 package me.zford.jobs.tasks;
 
+import me.zford.jobs.Jobs;
 import me.zford.jobs.economy.BufferedEconomy;
 import me.zford.jobs.economy.BufferedPayment;
+import me.zford.jobs.economy.DebtLedger;
 import me.zford.jobs.economy.Economy;
 
 public class BufferedPaymentTask implements Runnable {
     private BufferedEconomy bufferedEconomy;
     private Economy economy;
-    private BufferedPayment payment;
+    private String playername;
+    private double amount;
+    // time this payment was queued, in nanoseconds
+    private long queued;
+    // whether this is a retried withdrawal of debt
+    private boolean debt;
     public BufferedPaymentTask(BufferedEconomy bufferedEconomy, Economy economy, BufferedPayment payment) {
+        this(bufferedEconomy, economy, payment, false);
+    }
+    public BufferedPaymentTask(BufferedEconomy bufferedEconomy, Economy economy, BufferedPayment payment, boolean debt) {
+        this(bufferedEconomy, economy, payment.getPlayerName(), payment.getAmount(), debt);
+    }
+    public BufferedPaymentTask(BufferedEconomy bufferedEconomy, Economy economy, String playername, double amount, boolean debt) {
         this.bufferedEconomy =  bufferedEconomy;
         this.economy = economy;
-        this.payment = payment;
+        this.playername = playername;
+        this.amount = amount;
+        this.queued = System.nanoTime();
+        this.debt = debt;
     }
+    
+    public long getQueued() {
+        return queued;
+    }
+
     @Override
     public void run() {
-        if (payment.getAmount() > 0) {
-            economy.depositPlayer(payment.getPlayerName(), payment.getAmount());
+        if (amount > 0) {
+            // retried with the next batch, like failed bulk deposits
+            if (!economy.depositPlayer(playername, amount))
+                bufferedEconomy.pay(playername, amount);
         } else {
-            if (!economy.withdrawPlayer(payment.getPlayerName(), -payment.getAmount())) {
-                bufferedEconomy.pay(payment);
+            DebtLedger ledger = Jobs.getDebtLedger();
+            if (economy.withdrawPlayer(playername, -amount)) {
+                if (debt)
+                    bufferedEconomy.pay(playername, ledger.settle(playername, -amount));
+            } else if (debt) {
+                ledger.retryFailed(playername);
+            } else {
+                ledger.addDebt(playername, -amount);
             }
         }
     }
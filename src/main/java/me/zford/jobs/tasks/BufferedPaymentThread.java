@@ -22,6 +22,9 @@ import me.zford.jobs.Jobs;
 import me.zford.jobs.economy.BufferedEconomy;
 
 public class BufferedPaymentThread extends Thread {
+    // longest time shutdown waits for a payout in progress
+    private static final long SHUTDOWN_WAIT = 10000;
+    
     private volatile boolean running = true;
     private int sleep;
     
@@ -56,5 +59,10 @@ public class BufferedPaymentThread extends Thread {
     public void shutdown() {
         this.running = false;
         interrupt();
+        try {
+            join(SHUTDOWN_WAIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
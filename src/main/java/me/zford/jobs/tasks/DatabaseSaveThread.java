@@ -42,6 +42,7 @@ public class DatabaseSaveThread extends Thread {
             }
             try {
                 Jobs.getPlayerManager().saveAll();
+                Jobs.getDebtLedger().save(Jobs.getJobsDAO());
             } catch (Throwable t) {
                 t.printStackTrace();
                 Jobs.getPluginLogger().severe("Exception in DatabaseSaveTask, stopping auto save!");
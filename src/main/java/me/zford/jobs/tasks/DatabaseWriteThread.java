@@ -0,0 +1,82 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.tasks;
+
+import me.zford.jobs.Jobs;
+import me.zford.jobs.config.ConfigManager;
+import me.zford.jobs.dao.JobsWriteQueue;
+
+public class DatabaseWriteThread extends Thread {
+    // first wait after a failed write, doubled on every further failure
+    private static final long MIN_BACKOFF = 1000;
+    // longest time shutdown waits for a write in progress
+    private static final long SHUTDOWN_WAIT = 10000;
+    
+    private volatile boolean running = true;
+    private JobsWriteQueue queue;
+    
+    public DatabaseWriteThread(JobsWriteQueue queue) {
+        super("Jobs-DatabaseWriteTask");
+        this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+        long backoff = 0;
+        while (running) {
+            try {
+                if (backoff > 0)
+                    sleep(backoff);
+                queue.awaitWrites();
+            } catch (InterruptedException e) {
+                this.running = false;
+                continue;
+            }
+            boolean written;
+            try {
+                written = queue.flush(Jobs.getJobsDAO());
+            } catch (Throwable t) {
+                // the writes were queued again, keep retrying like any other failure
+                t.printStackTrace();
+                written = false;
+            }
+            if (written) {
+                backoff = 0;
+            } else {
+                // database unreachable, writes stay queued until it comes back
+                long max = Math.max(MIN_BACKOFF, ConfigManager.getJobsConfiguration().getSavePeriod() * 60000L);
+                backoff = Math.min(backoff == 0 ? MIN_BACKOFF : backoff * 2, max);
+                Jobs.getPluginLogger().warning("Database write failed, retrying in "+(backoff / 1000)+" seconds");
+            }
+        }
+    }
+    
+    /**
+     * Stops the thread and waits for a write in progress to finish
+     */
+    public void shutdown() {
+        this.running = false;
+        interrupt();
+        try {
+            join(SHUTDOWN_WAIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
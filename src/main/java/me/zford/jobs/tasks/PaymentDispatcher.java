@@ -0,0 +1,117 @@
+/**
+ * Jobs Plugin for Bukkit
+ * Copyright (C) 2011 Zak Ford <zak.j.ford@gmail.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.zford.jobs.tasks;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import me.zford.jobs.Jobs;
+import me.zford.jobs.config.ConfigManager;
+
+/**
+ * Pays out queued payments on the main thread, a few each tick
+ * 
+ * Runs as a single repeating task. Every tick it pays as many players as fit
+ * into the economy-tick-budget, and always at least one.
+ */
+public class PaymentDispatcher implements Runnable {
+    private final ConcurrentLinkedQueue<BufferedPaymentTask> queue = new ConcurrentLinkedQueue<BufferedPaymentTask>();
+    // size of the queue, kept separately as counting the queue walks it
+    private final AtomicInteger depth = new AtomicInteger();
+    
+    // payments waiting longer than this, or a queue deeper than this, are logged
+    private static final long LAG_WARNING = 5000000000L;
+    private static final int DEPTH_WARNING = 1000;
+    // shortest time between two warnings, in nanoseconds
+    private static final long REPORT_INTERVAL = 60000000000L;
+    
+    // only touched by the main thread
+    private int lastTickPaid = 0;
+    private long lastTickTime = 0;
+    private long maxLag = 0;
+    private long lastReport = System.nanoTime();
+    
+    /**
+     * Queues a payment to be paid on a later tick
+     * @param payment - the payment
+     */
+    public void queue(BufferedPaymentTask payment) {
+        queue.add(payment);
+        depth.incrementAndGet();
+    }
+    
+    @Override
+    public void run() {
+        if (queue.isEmpty())
+            return;
+        long budget = ConfigManager.getJobsConfiguration().getEconomyTickBudget();
+        long start = System.nanoTime();
+        long now = start;
+        int paid = 0;
+        BufferedPaymentTask payment;
+        do {
+            payment = poll();
+            if (payment == null)
+                break;
+            long lag = now - payment.getQueued();
+            if (lag > maxLag)
+                maxLag = lag;
+            payment.run();
+            paid++;
+            now = System.nanoTime();
+        } while (now - start < budget);
+        lastTickPaid = paid;
+        lastTickTime = now - start;
+        report(now);
+    }
+    
+    /**
+     * Pays everything still queued, regardless of the tick budget
+     */
+    public void runAll() {
+        BufferedPaymentTask payment;
+        while ((payment = poll()) != null) {
+            payment.run();
+        }
+    }
+    
+    private BufferedPaymentTask poll() {
+        BufferedPaymentTask payment = queue.poll();
+        if (payment != null)
+            depth.decrementAndGet();
+        return payment;
+    }
+    
+    /**
+     * Warns when payments fall behind, at most once per report interval
+     * @param now - the current time in nanoseconds
+     */
+    private void report(long now) {
+        if (now - lastReport < REPORT_INTERVAL)
+            return;
+        int queued = depth.get();
+        if (maxLag > LAG_WARNING || queued > DEPTH_WARNING) {
+            Jobs.getPluginLogger().warning("经济插件发放落后: 队列中 "+queued+" 笔, 最长等待 "+(maxLag / 1000000)+" 毫秒, 上一刻发放 "
+                    +lastTickPaid+" 笔, 用时 "+(lastTickTime / 1000)+" 微秒");
+        }
+        // the longest wait is kept per report interval
+        lastReport = now;
+        maxLag = 0;
+    }
+}